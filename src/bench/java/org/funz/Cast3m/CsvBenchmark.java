@@ -0,0 +1,73 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the reading of the CSV files written by {@code @EXCEL1} or {@code SORT 'EXCE'}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = { "-Xmx2g", "-Dcast3m.cache=false" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CsvBenchmark {
+
+    @Param({ "10", "1000" })
+    public int columns;
+
+    @Param({ "1000", "10000" })
+    public int rows;
+
+    private File dir;
+
+    private File csv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dir = SyntheticDecks.createDirectory();
+        this.csv = new File(this.dir, SyntheticDecks.CSV_NAME);
+        SyntheticDecks.writeCsv(this.csv, this.columns, this.rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticDecks.delete(this.dir);
+    }
+
+    @Benchmark
+    public List<String[]> readCSV() {
+        return DGibiHelper.readCSV(this.csv);
+    }
+
+    @Benchmark
+    public CsvColumns csvColumns() {
+        return CsvColumns.read(this.csv);
+    }
+}
@@ -0,0 +1,132 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the parsing of a dataset and of the listing, by {@link DGibiHelper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = { "-Xmx2g", "-Dcast3m.cache=false" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DGibiHelperBenchmark {
+
+    /** Number of lines of the dataset and of the listing */
+    @Param({ "1000", "100000", "1000000" })
+    public int lines;
+
+    /** Number of MESS variables */
+    @Param({ "10", "1000" })
+    public int variables;
+
+    private File dir;
+
+    private File deck;
+
+    private List<String> statements;
+
+    private String[] listing;
+
+    private String lastVariable;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dir = SyntheticDecks.createDirectory();
+        this.deck = new File(this.dir, "deck.dgibi");
+        SyntheticDecks.writeDeck(this.deck, this.lines, this.variables, 10);
+        this.statements = DGibiHelper.loadDgibi(this.deck);
+
+        final File listingFile = new File(this.dir, "castem.out");
+        SyntheticDecks.writeListing(listingFile, this.lines, this.variables);
+        final List<String> listingLines = Files.readAllLines(listingFile.toPath(), StandardCharsets.ISO_8859_1);
+        this.listing = listingLines.toArray(new String[listingLines.size()]);
+        this.lastVariable = SyntheticDecks.variable(this.variables - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticDecks.delete(this.dir);
+    }
+
+    @Benchmark
+    public List<String> loadDgibi() {
+        return DGibiHelper.loadDgibi(this.deck);
+    }
+
+    @Benchmark
+    public DGibiIndex index() {
+        return DGibiHelper.index(this.statements);
+    }
+
+    @Benchmark
+    public List<String> filterMess() {
+        return DGibiHelper.filterMess(this.statements);
+    }
+
+    @Benchmark
+    public Map<String, String> filterSortExcel() {
+        return DGibiHelper.filterSortExcel(this.statements);
+    }
+
+    @Benchmark
+    public Map<String, String> filterSortChai() {
+        return DGibiHelper.filterSortChai(this.statements);
+    }
+
+    @Benchmark
+    public Map<String, String> filterExcel1() {
+        return DGibiHelper.filterExcel1(this.statements);
+    }
+
+    @Benchmark
+    public List<String> filterTable() {
+        return DGibiHelper.filterTable(this.statements, "ta");
+    }
+
+    @Benchmark
+    public List<String> filterEvolManu() {
+        return DGibiHelper.filterEvolManu(this.statements, "ev");
+    }
+
+    @Benchmark
+    public List<String> filterExtr() {
+        return DGibiHelper.filterExtr(this.statements, "ex");
+    }
+
+    @Benchmark
+    public Double lookForScalar() {
+        // the last variable, printed at the end of the listing
+        return DGibiHelper.lookForScalar(this.listing, this.lastVariable);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of {@link Cast3mIOPlugin#setInputFiles(File...)} and {@link Cast3mIOPlugin#readOutput(File)} on the
+ * results of a run: a listing and the CSV file of the dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgs = { "-Xmx2g", "-Dcast3m.cache=false" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReadOutputBenchmark {
+
+    /** Number of lines of the dataset and of the listing */
+    @Param({ "1000", "100000", "1000000" })
+    public int lines;
+
+    /** Number of MESS variables */
+    @Param({ "10", "1000" })
+    public int variables;
+
+    /** Number of columns of the CSV file */
+    @Param({ "10", "1000" })
+    public int columns;
+
+    private File dir;
+
+    private File deck;
+
+    private Cast3mIOPlugin plugin;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dir = SyntheticDecks.createDirectory();
+        this.deck = new File(this.dir, "deck.dgibi");
+        SyntheticDecks.writeDeck(this.deck, this.lines, this.variables, this.columns);
+        SyntheticDecks.writeListing(new File(this.dir, Cast3mIOPlugin.OUTFILE_NAME), this.lines, this.variables);
+        SyntheticDecks.writeCsv(new File(this.dir, SyntheticDecks.CSV_NAME), this.columns, 1000);
+
+        this.plugin = new Cast3mIOPlugin();
+        this.plugin.setInputFiles(this.deck);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SyntheticDecks.delete(this.dir);
+    }
+
+    @Benchmark
+    public Cast3mIOPlugin setInputFiles() {
+        // the persistent output cache is disabled by the fork arguments, the parsed files stay cached in memory
+        this.plugin.setInputFiles(this.deck);
+        return this.plugin;
+    }
+
+    @Benchmark
+    public Map<String, Object> readOutput() {
+        return this.plugin.readOutput(this.dir);
+    }
+}
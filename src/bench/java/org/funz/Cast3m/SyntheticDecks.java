@@ -0,0 +1,181 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Generator of synthetic Cast3m datasets, listings and CSV files for the benchmarks.<br>
+ * The files look like the ones of a real study: a mesh built point by point, some comments and multi-line
+ * statements, and the outputs spread over the file.
+ */
+final class SyntheticDecks {
+
+    /** Name of the CSV file written by the generated dataset */
+    static final String CSV_NAME = "res.csv";
+
+    private SyntheticDecks() {
+        // Suppress default constructor for noninstantiability.
+        throw new AssertionError();
+    }
+
+    /**
+     * @return the name of the i-th MESS variable
+     */
+    static String variable(final int i) {
+        return "v" + i;
+    }
+
+    /**
+     * @return the name of the i-th CSV column
+     */
+    static String column(final int i) {
+        return "c" + i;
+    }
+
+    /**
+     * Write a dataset with {@code variables} MESS outputs, a table and an evolution written by SORT 'EXCE', two
+     * {@code @EXCEL1} outputs and a CHAI output, completed up to {@code lines} lines.
+     *
+     * @param file
+     *            the dgibi file.
+     * @param lines
+     *            the number of lines of the dataset.
+     * @param variables
+     *            the number of MESS variables.
+     * @param columns
+     *            the number of columns of {@link #CSV_NAME}, two of them being outputs.
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    static void writeDeck(final File file, final int lines, final int variables, final int columns)
+            throws IOException {
+        try (final BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.ISO_8859_1)) {
+            int written = 0;
+            out.write("* Synthetic dataset\nOPTI DIME 3 ELEM CUB8;\nta = TABLE;\n");
+            out.write("ev = EVOL MANU 'TEMPS' (PROG 0. 1. 2.) 'DEPL' (PROG 0. 1.E-3 2.E-3);\n");
+            out.write("ex = EXTR ev 'DEPL';\nnom = 'res';\n");
+            written += 6;
+
+            // outputs spread over the filler statements
+            final int step = Math.max(1, (lines - written - 8) / Math.max(1, variables));
+            int variable = 0;
+            for (int i = 0; written < (lines - 8); i++) {
+                if (((i % step) == 0) && (variable < variables)) {
+                    final String name = SyntheticDecks.variable(variable++);
+                    out.write(name + " = " + i + ".5;\nta . '" + name.toUpperCase(Locale.ROOT) + "' = " + name
+                            + ";\nMESS '" + name + "=' " + name + ";\n");
+                    written += 3;
+                } else if ((i % 10) == 0) {
+                    out.write("* point " + i + "\n");
+                    written++;
+                } else if ((i % 7) == 0) {
+                    out.write("l" + i + " = DROI 4 p" + (i - 1) + "\n     p" + (i - 2) + ";\n");
+                    written += 2;
+                } else {
+                    out.write("p" + i + " = POIN " + (i * 0.001) + " " + (i * 0.002) + " 1.E-3;\n");
+                    written++;
+                }
+            }
+
+            out.write("OPTI SORT 'table.csv';\nSORT 'EXCE' ta;\nOPTI SORT 'chai.txt';\nSORT 'CHAI' ex;\n");
+            out.write("OPTI SORT;\n@EXCEL1 " + SyntheticDecks.column(0) + " '" + SyntheticDecks.CSV_NAME + "';\n");
+            out.write("@EXCEL1 " + SyntheticDecks.column(columns - 1) + " (CHAI nom '.csv');\nFIN;\n");
+        }
+    }
+
+    /**
+     * Write the listing of a run: the echo of the statements, and the values of the {@code variables} MESS outputs
+     * spread over {@code lines} lines.
+     *
+     * @param file
+     *            the listing file.
+     * @param lines
+     *            the number of lines of the listing.
+     * @param variables
+     *            the number of MESS variables.
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    static void writeListing(final File file, final int lines, final int variables) throws IOException {
+        try (final BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.ISO_8859_1)) {
+            final int step = Math.max(1, lines / Math.max(1, variables));
+            int variable = 0;
+            for (int i = 0; i < lines; i++) {
+                if (((i % step) == (step - 1)) && (variable < variables)) {
+                    out.write(" " + SyntheticDecks.variable(variable) + "=  " + (variable + 0.5) + "E-01\n");
+                    variable++;
+                } else if ((i % 3) == 0) {
+                    out.write(" $ p" + i + " = POIN " + (i * 0.001) + " " + (i * 0.002) + " 1.E-3;\n");
+                } else {
+                    out.write("  PAS #   " + i + "  TEMPS = " + (i * 1.E-3) + "   NB ITER =    3\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a ';' separated file with a header, as written by {@code @EXCEL1}.
+     *
+     * @param file
+     *            the CSV file.
+     * @param columns
+     *            the number of columns.
+     * @param rows
+     *            the number of rows, header excluded.
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    static void writeCsv(final File file, final int columns, final int rows) throws IOException {
+        try (final BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.ISO_8859_1)) {
+            for (int c = 0; c < columns; c++) {
+                out.write(SyntheticDecks.column(c));
+                out.write(';');
+            }
+            out.write('\n');
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns; c++) {
+                    out.write(String.valueOf((r * 1.5E-3) + c));
+                    out.write(';');
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * @return a new temporary directory, deleted on exit
+     * @throws IOException
+     *             if the directory cannot be created
+     */
+    static File createDirectory() throws IOException {
+        final File dir = Files.createTempDirectory("cast3m-bench").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * Delete the files of a directory, then the directory.
+     */
+    static void delete(final File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,306 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Listing compressed while it is written: a gzip file made of independent members, each one holding a block of
+ * {@value #BLOCK_SIZE} bytes of the listing, or less when Cast3m did not write for {@value #FLUSH_MILLIS} ms. The file
+ * reads as a single gzip file ({@code zcat castem.out.gz}), and its {@value #INDEX_SUFFIX} index holds, for each
+ * complete member, the offsets of its end in the compressed file and in the listing: the readers only inflate the
+ * complete members, the ones they did not read yet, or the last ones for the end of the listing.
+ */
+final class BlockGzip {
+
+    /** Suffix of the compressed listing */
+    static final String SUFFIX = ".gz";
+
+    /** Suffix of the index, after the name of the compressed listing */
+    static final String INDEX_SUFFIX = ".idx";
+
+    /** Uncompressed size of a member */
+    static final int BLOCK_SIZE = 1024 * 1024;
+
+    /** Idle delay after which the current member is completed, so that the progress can be read */
+    static final long FLUSH_MILLIS = 1000;
+
+    private static final byte[] END = new byte[0];
+
+    private BlockGzip() {
+        // Suppress default constructor for noninstantiability.
+        throw new AssertionError();
+    }
+
+    /**
+     * @param listing
+     *            a listing.
+     * @return the listing, or its compressed file if only this one exists
+     */
+    static File resolve(final File listing) {
+        if (!listing.exists()) {
+            final File compressed = new File(listing.getPath() + BlockGzip.SUFFIX);
+            if (compressed.exists()) {
+                return compressed;
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * @param file
+     *            a listing.
+     * @return true if the listing is compressed
+     */
+    static boolean isCompressed(final File file) {
+        return file.getName().endsWith(BlockGzip.SUFFIX);
+    }
+
+    /**
+     * @param compressed
+     *            a compressed listing.
+     * @return the end offsets of its complete members, in the compressed file then in the listing
+     */
+    static List<long[]> readIndex(final File compressed) {
+        final List<long[]> index = new ArrayList<>();
+        final File file = new File(compressed.getPath() + BlockGzip.INDEX_SUFFIX);
+        if (!file.isFile()) {
+            return index;
+        }
+        try {
+            for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII)) {
+                final String[] offsets = line.trim().split("\\s+");
+                if (offsets.length == 2) {
+                    index.add(new long[] { Long.parseLong(offsets[0]), Long.parseLong(offsets[1]) });
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            // the last line is being written
+        }
+        return index;
+    }
+
+    /**
+     * @param file
+     *            a listing, compressed or not.
+     * @return the content of the listing, up to the last complete member if it is compressed
+     * @throws IOException
+     *             if the listing cannot be read
+     */
+    static InputStream open(final File file) throws IOException {
+        if (!BlockGzip.isCompressed(file)) {
+            return Files.newInputStream(file.toPath());
+        }
+        final List<long[]> index = BlockGzip.readIndex(file);
+        return BlockGzip.open(file, 0, index.isEmpty() ? 0 : index.get(index.size() - 1)[0]);
+    }
+
+    /**
+     * @param compressed
+     *            a compressed listing.
+     * @param start
+     *            the start of the first member to read, in the compressed file.
+     * @param end
+     *            the end of the last member to read, in the compressed file.
+     * @return the content of the members
+     * @throws IOException
+     *             if the listing cannot be read
+     */
+    static InputStream open(final File compressed, final long start, final long end) throws IOException {
+        if (end <= start) {
+            return new ByteArrayInputStream(BlockGzip.END);
+        }
+        final RandomAccessFile file = new RandomAccessFile(compressed, "r");
+        file.seek(start);
+        final InputStream range = new FilterInputStream(
+                new BufferedInputStream(Channels.newInputStream(file.getChannel()))) {
+
+            private long remaining = end - start;
+
+            @Override
+            public int read() throws IOException {
+                if (this.remaining <= 0) {
+                    return -1;
+                }
+                final int b = super.read();
+                if (b >= 0) {
+                    this.remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                if (this.remaining <= 0) {
+                    return -1;
+                }
+                final int read = super.read(b, off, (int) Math.min(len, this.remaining));
+                if (read > 0) {
+                    this.remaining -= read;
+                }
+                return read;
+            }
+
+            @Override
+            public int available() throws IOException {
+                // GZIPInputStream reads the next member only if some bytes are available
+                return (int) Math.min(this.remaining, Integer.MAX_VALUE);
+            }
+
+            @Override
+            public void close() throws IOException {
+                file.close();
+            }
+        };
+        return new GZIPInputStream(range, 64 * 1024);
+    }
+
+    /**
+     * Compress a listing while it is written.
+     *
+     * @param in
+     *            the listing, read up to its end.
+     * @param compressed
+     *            the compressed listing, its index being written next to it.
+     * @throws IOException
+     *             if the listing cannot be read or written
+     */
+    static void compress(final InputStream in, final File compressed) throws IOException {
+        final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        final IOException[] readError = new IOException[1];
+        final Thread reader = new Thread(() -> {
+            try {
+                final byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    if (read > 0) {
+                        chunks.add(Arrays.copyOf(buffer, read));
+                    }
+                }
+            } catch (final IOException e) {
+                readError[0] = e;
+            } finally {
+                chunks.add(BlockGzip.END);
+            }
+        }, "Listing reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        final File indexFile = new File(compressed.getPath() + BlockGzip.INDEX_SUFFIX);
+        try (final OutputStream file = Files.newOutputStream(compressed.toPath());
+                final Writer index = Files.newBufferedWriter(indexFile.toPath(), StandardCharsets.US_ASCII,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final CountingOutputStream counter = new CountingOutputStream(file);
+            GZIPOutputStream member = null;
+            long blockSize = 0;
+            long uncompressed = 0;
+            while (true) {
+                final byte[] chunk;
+                try {
+                    chunk = chunks.poll(BlockGzip.FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if ((chunk == null) || (chunk == BlockGzip.END) || (blockSize >= BlockGzip.BLOCK_SIZE)) {
+                    // idle, ended or full: complete the member
+                    if (member != null) {
+                        // releases the deflater, the file staying open
+                        member.close();
+                        uncompressed += blockSize;
+                        index.write(counter.count + " " + uncompressed + "\n");
+                        index.flush();
+                        member = null;
+                        blockSize = 0;
+                    }
+                    if (chunk == BlockGzip.END) {
+                        break;
+                    }
+                }
+                if ((chunk != null) && (chunk.length > 0)) {
+                    if (member == null) {
+                        member = new GZIPOutputStream(counter, 64 * 1024);
+                    }
+                    member.write(chunk);
+                    blockSize += chunk.length;
+                }
+            }
+        }
+        if (readError[0] != null) {
+            throw readError[0];
+        }
+    }
+
+    /**
+     * Stream which counts the bytes written, the members being closed without closing the file.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Command line, for the launch scripts: {@code BlockGzip castem.out.gz} compresses the standard input.
+     *
+     * @param args
+     *            the compressed listing.
+     * @throws IOException
+     *             if the listing cannot be read or written
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: BlockGzip listing.gz < listing");
+            System.exit(1);
+        }
+        BlockGzip.compress(System.in, new File(args[0]));
+    }
+}
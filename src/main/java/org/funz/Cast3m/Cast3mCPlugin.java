@@ -15,14 +15,17 @@
 package org.funz.Cast3m;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import org.funz.calculator.plugin.CodeLauncher;
 import org.funz.calculator.plugin.DataChannel;
 import org.funz.calculator.plugin.DefaultCalculatorPlugin;
 import org.funz.calculator.plugin.DefaultCodeLauncher;
 import org.funz.calculator.plugin.OutputReader;
-import static org.funz.util.ParserUtils.countLines;
-import static org.funz.util.ParserUtils.getLastLineContaining;
 
 public class Cast3mCPlugin extends DefaultCalculatorPlugin {
 
@@ -37,6 +40,11 @@ public class Cast3mCPlugin extends DefaultCalculatorPlugin {
 
         private class Cast3mOutReader extends OutputReader {
 
+            /** Polling delay while the listing grows (ms) */
+            private static final long MIN_DELAY = 250;
+            /** Polling delay when the listing is idle (ms) */
+            private static final long MAX_DELAY = 4000;
+
             public Cast3mOutReader(DefaultCodeLauncher l) {
                 super(l);
                 _information = "?";
@@ -46,18 +54,58 @@ public class Cast3mCPlugin extends DefaultCalculatorPlugin {
                 if (getDataChannel() == null) {
                     return;
                 }
+                ListingTail tail = null;
+                StepProgress progress = null;
+                ListingWatchdog watchdog = ListingWatchdog.getDefault();
+                long delay = MIN_DELAY;
                 while (!_stopMe) {
                     synchronized (this) {
                         try {
-                            wait(1000);
+                            wait(delay);
                         } catch (Exception e) {
                         }
                     }
 
-                    File out = new File(_dir, "castem.out");
+                    File listing = new File(_dir, "castem.out");
+                    if (tail == null) {
+                        tail = new ListingTail(listing);
+                        progress = StepProgress.forCase(_dir);
+                        tail.setListener(watchdog == null ? progress : progress.andThen(watchdog));
+                    }
+
+                    // castem.out, or castem.out.gz when it is compressed during the run
+                    File out = BlockGzip.resolve(listing);
+
+                    // adaptive polling: faster when the listing grows, back off when idle
+                    boolean grown = tail.update();
+                    delay = grown ? MIN_DELAY : Math.min(2 * delay, MAX_DELAY);
+
+                    String reason = watchdog == null ? null : watchdog.check(System.currentTimeMillis());
+                    if (reason != null) {
+                        // diverging or stalled run: kill it, Cast3m.sh reports the reason
+                        watchdog.stop(_dir);
+                        tail.setListener(progress);
+                        watchdog = null;
+                        _information = "Stopped by watchdog: " + reason;
+                        System.out.println("> Information sent : " + _information);
+                        if (!getDataChannel().sendInfomationLineToConsole(_information)) {
+                            break;
+                        }
+                        continue;
+                    }
 
-                    if (out.exists()) {
-                       String new_information = getLastLineContaining(out, "******").replace('*',(char)0) + getLastLineContaining(out, "PAS #");
+                    // resources of the running processes: rss_mb=.. rss_peak_mb=.. cpu_s=.. io_mb=.. threads=..
+                    ProcessSampler resources = sampler;
+                    String usage = resources != null && resources.sample() ? " " + resources.format() : "";
+
+                    if (progress.hasStep()) {
+                        // machine readable: step=.. time=.. dt=.. iter=.. progress=.. rate=.. eta=..
+                        String new_information = progress.format(System.currentTimeMillis()) + usage;
+                        if (new_information.equals(_information))
+                            continue;
+                        _information = new_information;
+                    } else if (out.exists()) {
+                       String new_information = tail.getLastErrorLine().replace('*',(char)0) + tail.getLastStepLine() + usage;
                        if (_information!=null && new_information!=null && new_information.equals(_information)) 
                          continue;
                        else
@@ -66,7 +114,7 @@ public class Cast3mCPlugin extends DefaultCalculatorPlugin {
 
                     if (_information==null || _information.length()<=0) {
                         if (out.exists()) {
-                            _information = "" + countLines(out, "", true);
+                            _information = "" + tail.getLineCount();
                         } else {
                             _information = "0";
                         }
@@ -81,10 +129,120 @@ public class Cast3mCPlugin extends DefaultCalculatorPlugin {
             }
         }
 
+        /** Warm interpreter running the current case, when the worker pool is enabled */
+        private volatile Cast3mWorker worker;
+
+        /** Resources of the current case, sampled by the progress thread */
+        private volatile ProcessSampler sampler;
+
         Cast3mLauncher(Cast3mCPlugin plugin) {
             super(plugin);
             _progressSender = new Cast3mOutReader(this);
         }
 
+        /**
+         * Run the case, record the resources it used in the {@link ProcessSampler#SUMMARY_FILE} file, and clean the
+         * files it wrote according to the {@link ResultRetention}.
+         */
+        public int runCommand() throws Exception {
+            if (_dir == null) {
+                return runCase();
+            }
+            ResultRetention retention = ResultRetention.getDefault();
+            Set<String> inputs = null;
+            if (retention != null) {
+                try {
+                    inputs = retention.prepare(_dir);
+                } catch (IOException e) {
+                    System.err.println("Unable to find the files to keep: " + e.getMessage());
+                }
+            }
+            long start = System.currentTimeMillis();
+            ProcessSampler resources = ProcessSampler.isSupported() ? new ProcessSampler(_dir) : null;
+            sampler = resources;
+            try {
+                return runCase();
+            } finally {
+                sampler = null;
+                if (resources != null) {
+                    resources.sample();
+                    resources.writeSummary(_dir, System.currentTimeMillis() - start);
+                }
+                if (inputs != null) {
+                    retention.apply(_dir, inputs);
+                }
+            }
+        }
+
+        /**
+         * Run the case in a warm interpreter of the {@link Cast3mWorkerPool} when it is enabled, with the script
+         * otherwise.
+         */
+        private int runCase() throws Exception {
+            Cast3mWorkerPool pool = Cast3mWorkerPool.getDefault();
+            DGibiCheckpoint checkpoint = DGibiCheckpoint.getDefault();
+            File[] decks = _dir == null ? null : _dir.listFiles();
+            if ((pool == null && checkpoint == null) || decks == null) {
+                return super.runCommand();
+            }
+            List<File> roots = new DGibiGraph(DGibiHelper.filterFiles(".dgibi", decks)).getRoots();
+            if (roots.size() != 1) {
+                return super.runCommand();
+            }
+
+            if (checkpoint != null) {
+                try {
+                    if (checkpoint.apply(roots.get(0))) {
+                        System.out.println("> Common prefix of the cases restored from checkpoint");
+                    }
+                } catch (IOException e) {
+                    System.err.println("Unable to use the checkpoint of the dataset: " + e.getMessage());
+                }
+            }
+            try {
+                return runDeck(pool, roots.get(0));
+            } finally {
+                // the case keeps the dataset which produced its results
+                DGibiCheckpoint.clean(roots.get(0));
+            }
+        }
+
+        /**
+         * Run a dataset in a warm interpreter of the pool, or with the script if there is no pool.
+         */
+        private int runDeck(Cast3mWorkerPool pool, File deck) throws Exception {
+            if (pool == null) {
+                return super.runCommand();
+            }
+
+            worker = pool.acquire();
+            int exit = Cast3mWorker.DIED;
+            File pid = new File(_dir, "PID");
+            try {
+                // for the tools which stop the case through its PID file, as with Cast3m.sh
+                Files.write(pid.toPath(), String.valueOf(worker.getPid()).getBytes(StandardCharsets.US_ASCII));
+                ProcessSampler resources = sampler;
+                if (resources != null) {
+                    // the worker already ran other cases
+                    resources.baseline();
+                }
+                exit = worker.run(deck, new File(_dir, Cast3mIOPlugin.OUTFILE_NAME));
+            } finally {
+                // after an error, the state of the interpreter cannot be trusted
+                pool.release(worker, exit == 0);
+                worker = null;
+                pid.delete();
+            }
+            return exit == Cast3mWorker.DIED ? Cast3mWorker.ERROR : exit;
+        }
+
+        public void stopRunning() {
+            Cast3mWorker current = worker;
+            if (current != null) {
+                current.destroy();
+            }
+            super.stopRunning();
+        }
+
     }
 }
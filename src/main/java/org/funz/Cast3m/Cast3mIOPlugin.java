@@ -15,12 +15,25 @@
 package org.funz.Cast3m;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import javax.net.ssl.SSLKeyException;
 
@@ -37,7 +50,10 @@ import org.funz.util.ParserUtils;
  */
 public class Cast3mIOPlugin extends ExtendedIOPlugin {
 
-    private static final String OUTFILE_NAME = "castem.out";
+    static final String OUTFILE_NAME = "castem.out";
+
+    /** Outputs read by {@link #readOutput(File)}, the other ones being skipped */
+    static final String OUTPUTS_PROPERTY = "cast3m.outputs";
     private static final String PLUGIN_INFO = "Cast3m plugin made by Artenum\nCopyright IRSN";
 
     /**
@@ -91,37 +107,61 @@ public class Cast3mIOPlugin extends ExtendedIOPlugin {
         // input files
         super.setInputFiles(inputfiles);
 
-        // scan input files
-        for (final File fdgibi : DGibiHelper.filterFiles("dgibi", inputfiles)) {
-            final List<String> lines = DGibiHelper.loadDgibi(fdgibi);
+        // scan input files, unless they were already analysed
+        final File[] dgibiFiles = DGibiHelper.filterFiles("dgibi", inputfiles);
+        final OutputCache cache = OutputCache.getDefault();
+        final String key = cache == null ? null : cache.key(dgibiFiles);
+        Map<String, String> outputs = key == null ? null : cache.load(key);
+        if (outputs == null) {
+            // included files and procedures are parsed with the files including them
+            final DGibiGraph graph = new DGibiGraph(dgibiFiles);
+            outputs = this.findOutputs(graph);
+            if (key != null) {
+                cache.store(key, outputs, graph.getFiles());
+            }
+        }
+        this._output.putAll(outputs);
+    }
+
+    /**
+     * @param graph
+     *            the dgibi input files and the files they include.
+     * @return the outputs found in the files, associated to {@link DGibiHelper#CASE_OUTPUT_KEY} or to the name of
+     *         their file prefixed by {@link DGibiHelper#FILE_OUTPUT_PREFIX}
+     */
+    private Map<String, String> findOutputs(final DGibiGraph graph) {
+        final Map<String, String> outputs = new LinkedHashMap<>();
+        for (final File fdgibi : graph.getRoots()) {
+            // outputs and variables of the file and its includes, found in one pass over their tokens
+            final DGibiIndex index = new DGibiIndex(graph.expand(fdgibi));
 
             // MESS 'var='
-            final List<String> messVars = DGibiHelper.filterMess(lines);
+            final List<String> messVars = DGibiHelper.filterMess(index);
             for (final String var : messVars) {
-                this._output.put(var, DGibiHelper.CASE_OUTPUT_KEY);
+                outputs.put(var, DGibiHelper.CASE_OUTPUT_KEY);
             }
 
             // SORT 'CHAI'
-            final Map<String, String> chaiVars = DGibiHelper.filterSortChai(lines);
+            final Map<String, String> chaiVars = DGibiHelper.filterSortChai(index);
             for (final Entry<String, String> entry : chaiVars.entrySet()) {
-                this._output.put(entry.getKey(), DGibiHelper.FILE_OUTPUT_PREFIX + entry.getValue());
+                outputs.put(entry.getKey(), DGibiHelper.FILE_OUTPUT_PREFIX + entry.getValue());
             }
 
             // SORT 'EXCE'
-            final Map<String, String> excelVariables = DGibiHelper.filterSortExcel(lines);
+            final Map<String, String> excelVariables = DGibiHelper.filterSortExcel(index);
             for (final Entry<String, String> entry : excelVariables.entrySet()) {
                 final String variable = entry.getKey();
 
                 // Look for 'TABLE'
-                final List<String> vars = new ArrayList<>(DGibiHelper.filterTable(lines, variable));
+                final List<String> vars = new ArrayList<>(DGibiHelper.filterTable(index, variable));
                 if (vars.isEmpty()) {
                     // Look for columns defined with 'EVOL MANU'
-                    vars.addAll(DGibiHelper.filterEvolManu(lines, variable));
+                    vars.addAll(DGibiHelper.filterEvolManu(index, variable));
                 }
 
                 if (vars.isEmpty()) {
                     // Look for columns defined with 'EXTR'
-                    vars.addAll(DGibiHelper.filterExtr(lines, variable));
+                    vars.addAll(DGibiHelper.filterExtr(index, variable));
                 }
 
                 if (vars.isEmpty()) {
@@ -130,45 +170,269 @@ public class Cast3mIOPlugin extends ExtendedIOPlugin {
 
                 // Register variables
                 for (final String var : vars) {
-                    this._output.put(var, DGibiHelper.FILE_OUTPUT_PREFIX + entry.getValue());
+                    outputs.put(var, DGibiHelper.FILE_OUTPUT_PREFIX + entry.getValue());
                 }
 
             }
 
+            // SORT 'VTK' and SORT 'AVS': statistics of the fields
+            final Map<String, String> fieldVars = DGibiHelper.filterSortFields(index);
+            for (final Entry<String, String> entry : fieldVars.entrySet()) {
+                for (final String statistic : FieldReducer.STATISTICS) {
+                    outputs.put(entry.getKey() + '_' + statistic, DGibiHelper.FIELD_OUTPUT_PREFIX + entry.getValue());
+                }
+            }
+
+            // SAUV: the objects, or the entries of the tables
+            final Map<String, String> sauvVars = DGibiHelper.filterSauv(index);
+            for (final Entry<String, String> entry : sauvVars.entrySet()) {
+                final List<String> keys = index.getTableKeys(entry.getKey());
+                if (keys.isEmpty()) {
+                    outputs.put(entry.getKey(), DGibiHelper.SAUV_OUTPUT_PREFIX + entry.getValue());
+                }
+                for (final String key : keys) {
+                    outputs.put(entry.getKey() + '.' + key, DGibiHelper.SAUV_OUTPUT_PREFIX + entry.getValue());
+                }
+            }
+            for (final Entry<String, String> entry : DGibiHelper.filterBinarySauv(index).entrySet()) {
+                System.err.println("Object " + entry.getKey() + " saved in " + entry.getValue()
+                        + " is not an output: the SAUV file must be formatted (OPTI SAUV FORM)");
+            }
+
             // @EXCEL1 procedure lines
-            final Map<String, String> excel1Vars = DGibiHelper.filterExcel1(lines);
+            final Map<String, String> excel1Vars = DGibiHelper.filterExcel1(index);
             for (final Entry<String, String> entry : excel1Vars.entrySet()) {
-                this._output.put(entry.getKey(), DGibiHelper.FILE_OUTPUT_PREFIX + entry.getValue());
+                outputs.put(entry.getKey(), DGibiHelper.FILE_OUTPUT_PREFIX + entry.getValue());
             }
         }
+        return outputs;
     }
 
     @Override
     public Map<String, Object> readOutput(final File outdir) {
-        final Map<String, Object> lout = super.readOutput(outdir);
+        return this.readOutput(outdir, Cast3mIOPlugin.getSelectedOutputs());
+    }
+
+    /**
+     * @return the outputs given by the {@value #OUTPUTS_PROPERTY} system property (comma separated), or null for all
+     *         the outputs
+     */
+    static Set<String> getSelectedOutputs() {
+        final String property = System.getProperty(Cast3mIOPlugin.OUTPUTS_PROPERTY);
+        if ((property == null) || property.trim().isEmpty()) {
+            return null;
+        }
+        final Set<String> outputs = new HashSet<>();
+        for (final String output : property.split(",")) {
+            if (!output.trim().isEmpty()) {
+                outputs.add(output.trim());
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Each output file is read on the first access to one of its outputs, through {@link Map#get(Object)}: the
+     * outputs which are not used are never read. Iterating over the outputs reads all of them.
+     *
+     * @param outdir
+     *            the directory of the case.
+     * @param selected
+     *            the outputs to read (the ones used by the output expressions), or null for all of them.
+     * @return the outputs of the case, read on demand
+     */
+    Map<String, Object> readOutput(final File outdir, final Set<String> selected) {
+        return this.readOutput(outdir, this.readBaseOutput(outdir), this._output, selected);
+    }
+
+    /**
+     * @return the outputs read by the default plugin, the base of the outputs of the case
+     */
+    Map<String, Object> readBaseOutput(final File outdir) {
+        return super.readOutput(outdir);
+    }
+
+    /**
+     * Read the outputs of many cases in parallel, for instance to apply new output expressions to the cases of a
+     * campaign. The outputs looked for are the ones found by the last {@link #setInputFiles(File...)}, a snapshot of
+     * them being taken when the method is called: the plugin can be used meanwhile.
+     *
+     * @param outdirs
+     *            the directories of the cases.
+     * @param selected
+     *            the outputs to read, or null for all of them.
+     * @param threads
+     *            the number of cases read at once, the number of processors if it is not positive (more threads may
+     *            help on network disks).
+     * @param consumer
+     *            receives each directory and its outputs (immutable, all read, with the same keys as
+     *            {@link #readOutput(File)}) as soon as they are read, one call at a time, from the reading threads.
+     * @param failures
+     *            receives each directory whose outputs cannot be read, with the error, in the same way. Each
+     *            directory is given either to the consumer or to this one.
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting, the reading being then stopped
+     * @throws RuntimeException
+     *             the first exception (or error) thrown by the consumer or by the failures, the reading being then
+     *             stopped
+     */
+    public void readOutputs(final List<File> outdirs, final Set<String> selected, final int threads,
+            final BiConsumer<File, Map<String, Object>> consumer, final BiConsumer<File, RuntimeException> failures)
+            throws InterruptedException {
+        final Map<String, Object> declared = Collections.unmodifiableMap(new HashMap<>(this._output));
+        final Set<String> selection = selected == null ? null : Collections.unmodifiableSet(new HashSet<>(selected));
+        final AtomicInteger count = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), runnable -> {
+                    final Thread thread = new Thread(runnable, "Cast3m output reader " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        final Object lock = new Object();
+        // first exception of the callbacks, given back to the caller
+        final AtomicReference<Throwable> callbackError = new AtomicReference<>();
+        try {
+            for (final File outdir : outdirs) {
+                executor.execute(() -> {
+                    if (callbackError.get() != null) {
+                        return;
+                    }
+                    Map<String, Object> outputs = null;
+                    RuntimeException failure = null;
+                    try {
+                        // all the files are read in this thread
+                        outputs = Collections.unmodifiableMap(new LinkedHashMap<>(
+                                this.readOutput(outdir, this.readBaseOutput(outdir), declared, selection)));
+                    } catch (final RuntimeException e) {
+                        failure = e;
+                    }
+                    synchronized (lock) {
+                        if (callbackError.get() != null) {
+                            return;
+                        }
+                        try {
+                            if (failure == null) {
+                                consumer.accept(outdir, outputs);
+                            } else {
+                                failures.accept(outdir, failure);
+                            }
+                        } catch (final RuntimeException | Error e) {
+                            callbackError.set(e);
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        final Throwable error = callbackError.get();
+        if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw (RuntimeException) error;
+        }
+    }
+
+    /**
+     * @param base
+     *            the outputs already known.
+     * @param declared
+     *            the outputs found in the input files.
+     */
+    private Map<String, Object> readOutput(final File outdir, final Map<String, Object> base,
+            final Map<String, Object> declared, final Set<String> selected) {
+        final OutputMap lout = new OutputMap(base);
+        // the array outputs are saved in binary files, if enabled
+        final NpyExport export = NpyExport.getDefault();
 
         // Read the "out.txt" (the output)
-        this.readOutTxt(outdir, lout);
+        final List<String> simpleVariables = Cast3mIOPlugin.select(DGibiHelper.extractSimpleVariables(declared),
+                selected);
+        Cast3mIOPlugin.defer(lout, export, outdir, simpleVariables,
+                result -> this.readOutTxt(outdir, simpleVariables, result));
 
         // Read other txt files
-        this.readNonCsvFiles(outdir, lout);
+        for (final Entry<String, List<String>> entry : Cast3mIOPlugin
+                .groupByFile(DGibiHelper.extractNonCsvVariables(declared), selected).entrySet()) {
+            Cast3mIOPlugin.defer(lout, export, outdir, entry.getValue(),
+                    result -> this.readNonCsvFile(new File(outdir, entry.getKey()), entry.getValue(), result));
+        }
 
         // Read CSV files
-        this.readCsvFiles(outdir, lout);
+        for (final Entry<String, List<String>> entry : Cast3mIOPlugin
+                .groupByFile(DGibiHelper.extractCsvVariables(declared), selected).entrySet()) {
+            Cast3mIOPlugin.defer(lout, export, outdir, entry.getValue(),
+                    result -> this.readCsvFile(new File(outdir, entry.getKey()), entry.getValue(), result));
+        }
+
+        // Reduce the fields of the VTK and AVS files, with their other fields when all the outputs are read
+        for (final Entry<String, List<String>> entry : Cast3mIOPlugin
+                .groupByFile(DGibiHelper.extractFieldVariables(declared), selected).entrySet()) {
+            Cast3mIOPlugin.defer(lout, export, outdir, entry.getValue(), result -> this
+                    .readFieldFile(new File(outdir, entry.getKey()), entry.getValue(), selected == null, result));
+        }
+
+        // Decode the saved objects
+        for (final Entry<String, List<String>> entry : Cast3mIOPlugin
+                .groupByFile(DGibiHelper.extractSauvVariables(declared), selected).entrySet()) {
+            Cast3mIOPlugin.defer(lout, export, outdir, entry.getValue(),
+                    result -> this.readSauvFile(new File(outdir, entry.getKey()), entry.getValue(), result));
+        }
+
+        // Resources used by the run: cast3m.cpu_s, cast3m.rss_peak_mb, cast3m.wall_s...
+        ProcessSampler.readSummary(outdir, lout);
 
         return lout;
     }
 
-    private void readOutTxt(final File outdir, final Map<String, Object> result) {
-        final List<String> variables = DGibiHelper.extractSimpleVariables(this._output);
+    private static void defer(final OutputMap outputs, final NpyExport export, final File outdir,
+            final Collection<String> variables, final Consumer<Map<String, Object>> loader) {
+        outputs.defer(variables, export == null ? loader : export.wrap(outdir, loader));
+    }
 
-        final File outfile = new File(outdir, Cast3mIOPlugin.OUTFILE_NAME);
+    /**
+     * @return the variables which are selected, all of them if the selection is null
+     */
+    private static List<String> select(final List<String> variables, final Set<String> selected) {
+        if (selected == null) {
+            return variables;
+        }
+        final List<String> result = new ArrayList<>();
+        for (final String variable : variables) {
+            if (selected.contains(variable)) {
+                result.add(variable);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Group the variables by file, so that each file is read once.
+     *
+     * @return the selected variables of each file
+     */
+    private static Map<String, List<String>> groupByFile(final Map<String, String> variablesToFilename,
+            final Set<String> selected) {
+        final Map<String, List<String>> filenameToVariables = new LinkedHashMap<>();
+        for (final Entry<String, String> variableAndFilename : variablesToFilename.entrySet()) {
+            if ((selected == null) || selected.contains(variableAndFilename.getKey())) {
+                filenameToVariables.computeIfAbsent(variableAndFilename.getValue(), f -> new ArrayList<>())
+                        .add(variableAndFilename.getKey());
+            }
+        }
+        return filenameToVariables;
+    }
+
+    private void readOutTxt(final File outdir, final List<String> variables, final Map<String, Object> result) {
+        // castem.out, or castem.out.gz when it was compressed during the run
+        final File outfile = BlockGzip.resolve(new File(outdir, Cast3mIOPlugin.OUTFILE_NAME));
         if (outfile.exists()) {
-            final String fullcontent = ParserUtils.getASCIIFileContent(outfile);
+            // one pass over the listing for all the variables
+            final Map<String, Double> values = new ListingScanner(variables).scan(outfile);
             for (final String variable : variables) {
-                // o contains the variable name
-                final String[] lines = fullcontent.split("\\r?\\n");
-                final Double val = DGibiHelper.lookForScalar(lines, variable);
+                final Double val = values.get(variable);
                 if (val != null) {
                     result.put(variable, val);
                 } else {
@@ -178,13 +442,8 @@ public class Cast3mIOPlugin extends ExtendedIOPlugin {
         }
     }
 
-    private void readNonCsvFiles(final File outdir, final Map<String, Object> result) {
-        final Map<String, String> variablesToFilename = DGibiHelper.extractNonCsvVariables(this._output);
-
-        for (final Entry<String, String> variableAndFilename : variablesToFilename.entrySet()) {
-            final String variable = variableAndFilename.getKey();
-            final String filename = variableAndFilename.getValue();
-            final File file = new File(outdir, filename);
+    private void readNonCsvFile(final File file, final List<String> variables, final Map<String, Object> result) {
+        for (final String variable : variables) {
             if (file.exists()) {
                 final String fullcontent = ParserUtils.getASCIIFileContent(file);
                 if (this.isDouble(fullcontent)) {
@@ -198,54 +457,115 @@ public class Cast3mIOPlugin extends ExtendedIOPlugin {
         }
     }
 
-    private void readCsvFiles(final File outdir, final Map<String, Object> result) {
-        final Map<String, String> variablesToFilename = DGibiHelper.extractCsvVariables(this._output);
+    private void readCsvFile(final File csvFile, final List<String> variables, final Map<String, Object> result) {
+        if (csvFile.exists()) {
+            final CsvColumns columns = CsvColumns.read(csvFile);
 
-        for (final Entry<String, String> variableAndFilename : variablesToFilename.entrySet()) {
-            final String variable = variableAndFilename.getKey();
-            final String filename = variableAndFilename.getValue();
-            final File csvFile = new File(outdir, filename);
-
-            if (csvFile.exists()) {
-                final List<String[]> columns = DGibiHelper.readCSV(csvFile);
-
-                if (this.isDouble(columns.get(0)[0])) {
+            for (final String variable : variables) {
+                if (columns.isEmpty()) {
+                    result.put(variable, new double[0]);
+                } else if (columns.getHeader() == null) {
                     this.readCsvFileNoHeader(variable, columns, result);
                 } else {
                     this.readCsvFileWithHeader(variable, columns, result);
                 }
-            } else {
+            }
+        } else {
+            for (final String variable : variables) {
                 result.put(variable, new double[0]);
             }
         }
     }
 
-    private void readCsvFileWithHeader(final String variable, final List<String[]> columns,
+    /**
+     * @param others
+     *            true to add the statistics of the other fields of the file.
+     */
+    private void readFieldFile(final File outfile, final List<String> variables, final boolean others,
             final Map<String, Object> result) {
+        final File file = FieldReducer.resolve(outfile);
+        final Map<String, FieldReducer.Reduction> reductions = file == null ? new HashMap<>()
+                : FieldReducer.read(file);
+
+        for (final String variable : variables) {
+            final int index = FieldReducer.statisticIndex(variable);
+            FieldReducer.Reduction reduction = reductions.get(variable.substring(0, index));
+            if (reduction == null) {
+                // field of an AVS file, named by Cast3m
+                reduction = reductions.get(FieldReducer.NODE_DATA);
+            }
+            result.put(variable, reduction == null ? Double.NaN : reduction.get(variable.substring(index + 1)));
+        }
 
-        for (final String[] column : columns) {
-            final String name = column[0];
-            if (name.contains(variable) || variable.startsWith(name)) {
-                final double[] array = new double[column.length - 1];
-                for (int i = 0; i < array.length; i++) {
-                    array[i] = Double.parseDouble(column[i + 1]);
+        // the other fields of the file
+        for (final Entry<String, FieldReducer.Reduction> fieldAndReduction : reductions.entrySet()) {
+            if (others && !fieldAndReduction.getKey().equals(FieldReducer.NODE_DATA)) {
+                for (final String statistic : FieldReducer.STATISTICS) {
+                    result.putIfAbsent(fieldAndReduction.getKey() + '_' + statistic,
+                            fieldAndReduction.getValue().get(statistic));
+                }
+            }
+        }
+    }
+
+    private void readSauvFile(final File file, final List<String> variables, final Map<String, Object> result) {
+        final Map<String, Object> tables = new HashMap<>();
+        try (final SauvFile sauv = file.exists() ? SauvFile.open(file) : null) {
+            for (final String variable : variables) {
+                // var or var.KEY, the object being decoded only if it is an output
+                final int dot = variable.indexOf('.');
+                final String name = dot < 0 ? variable : variable.substring(0, dot);
+                Object value = sauv == null ? null : tables.containsKey(name) ? tables.get(name) : sauv.read(name);
+                if (value instanceof Map) {
+                    tables.put(name, value);
                 }
-                result.put(variable, array);
+                if ((value instanceof Map) && (dot < 0) && Cast3mIOPlugin.isSauvArrays((Map<?, ?>) value)) {
+                    // CHPOINT, EVOLUTIO or table of LISTREEL: all the arrays, and each one as var.KEY
+                    for (final Entry<?, ?> array : ((Map<?, ?>) value).entrySet()) {
+                        result.put(variable + '.' + array.getKey(), array.getValue());
+                    }
+                    value = ((Map<?, ?>) value).values().toArray(new double[0][]);
+                } else if (value instanceof Map) {
+                    value = dot < 0 ? this.getSauvTableValues((Map<?, ?>) value)
+                            : ((Map<?, ?>) value).get(variable.substring(dot + 1));
+                }
+                result.put(variable, value instanceof Double || value instanceof double[] || value instanceof double[][]
+                        ? value
+                        : Double.NaN);
+            }
+        } catch (final IOException e) {
+            System.err.println("Unable to read " + file + ": " + e.getMessage());
+            for (final String variable : variables) {
+                result.put(variable, Double.NaN);
             }
         }
+    }
 
+    /**
+     * @return true if the object is a saved CHPOINT, EVOLUTIO or table whose values are all arrays
+     */
+    private static boolean isSauvArrays(final Map<?, ?> object) {
+        return !object.isEmpty() && object.values().stream().allMatch(v -> v instanceof double[]);
     }
 
-    private void readCsvFileNoHeader(final String variable, final List<String[]> columns,
+    /**
+     * @return the numeric values of a saved table, in the order of its entries
+     */
+    private double[] getSauvTableValues(final Map<?, ?> table) {
+        return table.values().stream().filter(v -> v instanceof Double).mapToDouble(v -> (Double) v).toArray();
+    }
+
+    private void readCsvFileWithHeader(final String variable, final CsvColumns columns,
             final Map<String, Object> result) {
-        final double[][] array = new double[columns.size()][columns.get(0).length];
-        for (int listIndex = 0; listIndex < columns.size(); listIndex++) {
-            final String[] column = columns.get(listIndex);
-            for (int columnIndex = 0; columnIndex < column.length; columnIndex++) {
-                array[listIndex][columnIndex] = Double.parseDouble(column[columnIndex]);
-            }
+        final double[] column = columns.getColumn(variable);
+        if (column != null) {
+            result.put(variable, column);
         }
-        result.put(variable, array);
+    }
+
+    private void readCsvFileNoHeader(final String variable, final CsvColumns columns,
+            final Map<String, Object> result) {
+        result.put(variable, columns.getColumns());
     }
 
     @Override
@@ -257,6 +577,14 @@ public class Cast3mIOPlugin extends ExtendedIOPlugin {
                 final String v = (String) entry.getValue();
                 if (v.equals(DGibiHelper.CASE_OUTPUT_KEY)) {
                     s.add(new OutputFunctionExpression.Numeric(k));
+                } else if (v.startsWith(DGibiHelper.SAUV_OUTPUT_PREFIX)) {
+                    if (k.contains(".")) {
+                        s.add(new OutputFunctionExpression.Numeric(k));
+                    } else {
+                        s.add(new OutputFunctionExpression.NumericArray(k));
+                    }
+                } else if (v.startsWith(DGibiHelper.FIELD_OUTPUT_PREFIX)) {
+                    s.add(new OutputFunctionExpression.Numeric(k));
                 } else if (v.startsWith(DGibiHelper.FILE_OUTPUT_PREFIX)) {
                     if (v.endsWith(".csv")) {
                         s.add(new OutputFunctionExpression.NumericArray(k));
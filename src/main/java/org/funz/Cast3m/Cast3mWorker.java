@@ -0,0 +1,259 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A long-lived Cast3m interpreter, fed case after case through its console.<br>
+ * Each case is written on the standard input of the process between two {@code MESS} markers, its file names being
+ * rewritten by {@link DGibiBatch#writePoint(Writer, DGibiBatch.Point, File)}, and the console output between the
+ * markers is the listing of the case. A case is failed when the process dies or when Cast3m reports an error: in
+ * console mode, Cast3m goes on reading after an error, so the worker must then be replaced.
+ */
+final class Cast3mWorker {
+
+    static final String BEGIN_MARKER = "FUNZ_CASE_BEGIN ";
+
+    static final String END_MARKER = "FUNZ_CASE_END ";
+
+    /** Exit code of a case when the process died before its end */
+    static final int DIED = -1;
+
+    /** Exit code of a case when Cast3m reported an error without a level */
+    static final int ERROR = 1;
+
+    /** Error level of Cast3m, as at the end of its listing, as the first group */
+    private static final Pattern LEVEL_PATTERN = Pattern.compile("ERREUR\\s*:\\s*([0-9]+)");
+
+    private final Process process;
+
+    private final Writer console;
+
+    private final BufferedReader output;
+
+    /** Working directory of the process */
+    private final File dir;
+
+    private int cases;
+
+    /** Resident memory after the first case (kB), or -1 */
+    private long initialRss = -1;
+
+    /**
+     * Start the interpreter.
+     *
+     * @param command
+     *            the command of the interpreter in console mode.
+     * @throws IOException
+     *             if the process cannot be started
+     */
+    Cast3mWorker(final List<String> command) throws IOException {
+        this.dir = Files.createTempDirectory("cast3m-worker").toFile();
+        this.process = new ProcessBuilder(command).directory(this.dir).redirectErrorStream(true).start();
+        this.console = new BufferedWriter(
+                new OutputStreamWriter(this.process.getOutputStream(), StandardCharsets.ISO_8859_1));
+        this.output = new BufferedReader(
+                new InputStreamReader(this.process.getInputStream(), StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Run a case, the listing being written while the case runs.
+     *
+     * @param deck
+     *            the compiled dataset of the case, its results being written next to it.
+     * @param listing
+     *            the listing of the case.
+     * @return 0 if the case went up to its end without error, {@value #DIED} if the process died before, the error
+     *         level of Cast3m otherwise
+     * @throws IOException
+     *             if the dataset cannot be read or the listing cannot be written
+     */
+    int run(final File deck, final File listing) throws IOException {
+        final int id = ++this.cases;
+        final IOException[] feedError = new IOException[1];
+        // feed the console while its output is read, so that none of the pipes fills up
+        final Thread feeder = new Thread(() -> {
+            try {
+                this.console.write("MESS '" + Cast3mWorker.BEGIN_MARKER + id + "';\n");
+                DGibiBatch.writePoint(this.console, new DGibiBatch.Point(deck), this.dir);
+                this.console.write("MESS '" + Cast3mWorker.END_MARKER + id + "';\n");
+                this.console.flush();
+            } catch (final IOException e) {
+                feedError[0] = e;
+            }
+        }, "Cast3m worker feeder");
+        feeder.setDaemon(true);
+        feeder.start();
+
+        final String begin = Cast3mWorker.BEGIN_MARKER + id;
+        final String end = Cast3mWorker.END_MARKER + id;
+        boolean ended = false;
+        int level = 0;
+        try (final Writer out = Files.newBufferedWriter(listing.toPath(), StandardCharsets.ISO_8859_1)) {
+            boolean begun = false;
+            String line;
+            while (!ended && ((line = this.output.readLine()) != null)) {
+                final String trimmed = line.trim();
+                if (trimmed.equals(begin)) {
+                    begun = true;
+                } else if (trimmed.equals(end)) {
+                    ended = true;
+                } else if (begun && !trimmed.contains(Cast3mWorker.BEGIN_MARKER)
+                        && !trimmed.contains(Cast3mWorker.END_MARKER)) {
+                    out.write(line);
+                    out.write('\n');
+                    out.flush();
+                    if (level == 0) {
+                        level = Cast3mWorker.getErrorLevel(trimmed);
+                    }
+                }
+            }
+        }
+
+        try {
+            feeder.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ended && (feedError[0] != null)) {
+            throw feedError[0];
+        }
+        if (!ended) {
+            return Cast3mWorker.DIED;
+        }
+        if (this.initialRss < 0) {
+            this.initialRss = this.getRss();
+        }
+        return level;
+    }
+
+    /**
+     * @param line
+     *            a line of the console, trimmed.
+     * @return the error level of Cast3m given by the line, {@value #ERROR} for an error banner
+     *         ({@code ***** ERREUR 21 *****}), 0 otherwise
+     */
+    static int getErrorLevel(final String line) {
+        if (line.startsWith("$") || !line.contains("ERREUR")) {
+            // echo of the dataset
+            return 0;
+        }
+        final Matcher level = Cast3mWorker.LEVEL_PATTERN.matcher(line);
+        if (level.find()) {
+            try {
+                return Integer.parseInt(level.group(1));
+            } catch (final NumberFormatException e) {
+                return Cast3mWorker.ERROR;
+            }
+        }
+        return line.contains("*****") ? Cast3mWorker.ERROR : 0;
+    }
+
+    /**
+     * @param maxCases
+     *            the maximum number of cases of a worker.
+     * @param maxRssGrowth
+     *            the maximum growth of the resident memory since the first case (kB).
+     * @return true if the worker should be replaced
+     */
+    boolean isWorn(final int maxCases, final long maxRssGrowth) {
+        if (!this.process.isAlive() || (this.cases >= maxCases)) {
+            return true;
+        }
+        final long rss = this.getRss();
+        return (rss >= 0) && (this.initialRss >= 0) && ((rss - this.initialRss) > maxRssGrowth);
+    }
+
+    /**
+     * @return the process id, or -1 if it is not known
+     */
+    long getPid() {
+        return ProcessSampler.getPid(this.process);
+    }
+
+    /**
+     * @return the resident memory of the process (kB), or -1 if it is not known
+     */
+    private long getRss() {
+        final long pid = this.getPid();
+        final File status = new File("/proc/" + pid + "/status");
+        if ((pid < 0) || !status.isFile()) {
+            return -1;
+        }
+        try {
+            for (final String line : Files.readAllLines(status.toPath(), StandardCharsets.ISO_8859_1)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Ask the interpreter to stop, then kill it if it does not.
+     */
+    void close() {
+        try {
+            this.console.write("FIN;\n");
+            this.console.close();
+        } catch (final IOException e) {
+            // already dead
+        }
+        try {
+            if (!this.process.waitFor(5, TimeUnit.SECONDS)) {
+                this.process.destroyForcibly();
+            }
+        } catch (final InterruptedException e) {
+            this.process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        this.deleteDir();
+    }
+
+    /**
+     * Kill the interpreter, for instance to stop the current case.
+     */
+    void destroy() {
+        this.process.destroyForcibly();
+        this.deleteDir();
+    }
+
+    /**
+     * Delete the working directory of the interpreter with the files and the directories Cast3m wrote in it.
+     */
+    private void deleteDir() {
+        try (final Stream<Path> files = Files.walk(this.dir.toPath())) {
+            // the files before their directory
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (final IOException | UncheckedIOException e) {
+            System.err.println("Unable to delete " + this.dir + ": " + e.getMessage());
+        }
+    }
+}
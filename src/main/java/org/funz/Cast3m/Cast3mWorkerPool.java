@@ -0,0 +1,149 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Pool of warm Cast3m interpreters ({@link Cast3mWorker}), so that the cases do not pay the start of Cast3m.<br>
+ * A worker is replaced after {@value #MAX_CASES_PROPERTY} cases, when its resident memory grew by more than
+ * {@value #MAX_RSS_GROWTH_PROPERTY} MB since its first case, or when a case did not complete or failed. The
+ * replacement is started at once, so that it is ready for the next case.<br>
+ * The pool is enabled by the {@value #WORKERS_PROPERTY} system property (the number of idle workers kept), the
+ * interpreter being started with the {@value #COMMAND_PROPERTY} system property (default: {@code castem20}).
+ */
+final class Cast3mWorkerPool {
+
+    static final String WORKERS_PROPERTY = "cast3m.workers";
+
+    static final String COMMAND_PROPERTY = "cast3m.worker.command";
+
+    static final String MAX_CASES_PROPERTY = "cast3m.worker.maxCases";
+
+    static final String MAX_RSS_GROWTH_PROPERTY = "cast3m.worker.maxRssGrowth";
+
+    private static Cast3mWorkerPool defaultPool;
+
+    private final List<String> command;
+
+    private final int size;
+
+    private final int maxCases;
+
+    /** Maximum memory growth of a worker (kB) */
+    private final long maxRssGrowth;
+
+    private final BlockingQueue<Cast3mWorker> idle;
+
+    private int started;
+
+    /**
+     * @param command
+     *            the command of the interpreter in console mode.
+     * @param size
+     *            the number of idle workers kept.
+     * @param maxCases
+     *            the number of cases after which a worker is replaced.
+     * @param maxRssGrowthMb
+     *            the memory growth after which a worker is replaced (MB).
+     */
+    Cast3mWorkerPool(final List<String> command, final int size, final int maxCases, final long maxRssGrowthMb) {
+        this.command = new ArrayList<>(command);
+        this.size = size;
+        this.maxCases = maxCases;
+        this.maxRssGrowth = 1024 * maxRssGrowthMb;
+        this.idle = new LinkedBlockingQueue<>(size);
+    }
+
+    /**
+     * @return the pool configured by the system properties, or null if it is disabled
+     */
+    static synchronized Cast3mWorkerPool getDefault() {
+        final int workers = Integer.getInteger(Cast3mWorkerPool.WORKERS_PROPERTY, 0);
+        if (workers <= 0) {
+            return null;
+        }
+        if (Cast3mWorkerPool.defaultPool == null) {
+            final String command = System.getProperty(Cast3mWorkerPool.COMMAND_PROPERTY, "castem20");
+            final Cast3mWorkerPool pool = new Cast3mWorkerPool(Arrays.asList(command.trim().split("\\s+")), workers,
+                    Integer.getInteger(Cast3mWorkerPool.MAX_CASES_PROPERTY, 50),
+                    Long.getLong(Cast3mWorkerPool.MAX_RSS_GROWTH_PROPERTY, 1024L));
+            Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "Cast3m workers shutdown"));
+            Cast3mWorkerPool.defaultPool = pool;
+        }
+        return Cast3mWorkerPool.defaultPool;
+    }
+
+    /**
+     * @return an idle worker, started if none is available
+     * @throws IOException
+     *             if a worker cannot be started
+     */
+    Cast3mWorker acquire() throws IOException {
+        final Cast3mWorker worker = this.idle.poll();
+        return worker != null ? worker : this.start();
+    }
+
+    /**
+     * Give a worker back after a case.
+     *
+     * @param worker
+     *            the worker.
+     * @param completed
+     *            false if the case did not complete or failed, the worker is then replaced.
+     */
+    void release(final Cast3mWorker worker, final boolean completed) {
+        if (completed && !worker.isWorn(this.maxCases, this.maxRssGrowth) && this.idle.offer(worker)) {
+            return;
+        }
+        if (completed) {
+            worker.close();
+        } else {
+            worker.destroy();
+        }
+        if (this.idle.isEmpty()) {
+            // warm up the replacement while the calculator gets the next case
+            try {
+                this.idle.offer(this.start());
+            } catch (final IOException e) {
+                System.err.println("Unable to start a Cast3m worker: " + e.getMessage());
+            }
+        }
+    }
+
+    private Cast3mWorker start() throws IOException {
+        synchronized (this) {
+            this.started++;
+        }
+        return new Cast3mWorker(this.command);
+    }
+
+    /**
+     * @return the number of workers started so far
+     */
+    synchronized int getStarted() {
+        return this.started;
+    }
+
+    /**
+     * Stop the idle workers.
+     */
+    void close() {
+        Cast3mWorker worker;
+        while ((worker = this.idle.poll()) != null) {
+            worker.close();
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columns of a CSV file written by {@code SORT 'EXCE'} or {@code @EXCEL1}.<br>
+ * The ';' separated file is parsed in one streaming pass, straight into one {@code double[]} per column: the cells
+ * are never stored as strings, except the ones of the header. Empty columns (usually the one after the trailing ';')
+ * are dropped.
+ */
+class CsvColumns {
+
+    private static final char SEPARATOR = ';';
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Exact powers of ten used by the fast path of {@link #parseDouble(char[], int, int)} */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final String[] header;
+
+    private final double[][] columns;
+
+    /** Index of the columns by name, built on first lookup */
+    private Map<String, Integer> index;
+
+    private CsvColumns(final String[] header, final double[][] columns) {
+        this.header = header;
+        this.columns = columns;
+    }
+
+    /**
+     * @return the names of the columns, or null if the first line of the file holds values
+     */
+    String[] getHeader() {
+        return this.header;
+    }
+
+    /**
+     * @return the values of each column, without the header
+     */
+    double[][] getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * Look for the column of a variable: a column with the same name first, otherwise the last column whose name
+     * contains the variable name or starts it.
+     *
+     * @param variable
+     *            the name of the variable.
+     * @return the values of the column, or null if there is no header or no column matches
+     */
+    double[] getColumn(final String variable) {
+        if (this.header == null) {
+            return null;
+        }
+        if (this.index == null) {
+            this.index = new HashMap<>();
+            for (int i = 0; i < this.header.length; i++) {
+                this.index.put(this.header[i], i);
+            }
+        }
+
+        final Integer exact = this.index.get(variable);
+        if (exact != null) {
+            return this.columns[exact];
+        }
+        double[] found = null;
+        for (int i = 0; i < this.header.length; i++) {
+            final String name = this.header[i];
+            if (name.contains(variable) || variable.startsWith(name)) {
+                found = this.columns[i];
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return true if the file has no column
+     */
+    boolean isEmpty() {
+        return this.columns.length == 0;
+    }
+
+    /**
+     * @param f
+     *            the CSV file.
+     * @return the columns of the file, empty if it cannot be read
+     */
+    static CsvColumns read(final File f) {
+        try (final Reader reader = new InputStreamReader(Files.newInputStream(f.toPath()),
+                StandardCharsets.ISO_8859_1)) {
+            return CsvColumns.read(reader);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return new CsvColumns(null, new double[0][]);
+        }
+    }
+
+    /**
+     * @param reader
+     *            the CSV content.
+     * @return the columns of the content
+     * @throws IOException
+     *             if the content cannot be read
+     */
+    static CsvColumns read(final Reader reader) throws IOException {
+        return new Parser().parse(reader);
+    }
+
+    /**
+     * Streaming parser: the current cell is accumulated in a reusable buffer, then converted in place.
+     */
+    private static final class Parser {
+
+        private final char[] input = new char[64 * 1024];
+
+        private char[] cell = new char[64];
+
+        private int cellLength;
+
+        /** Cells of the first line, kept as text until we know if it is a header */
+        private List<String> firstLine = new ArrayList<>();
+
+        private boolean firstLineDone;
+
+        private String[] header;
+
+        private double[][] values = new double[0][];
+
+        private boolean[] notEmpty = new boolean[0];
+
+        private int rows;
+
+        private int column;
+
+        private boolean lineIsBlank = true;
+
+        CsvColumns parse(final Reader reader) throws IOException {
+            int read;
+            while ((read = reader.read(this.input)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    final char c = this.input[i];
+                    if (c == CsvColumns.SEPARATOR) {
+                        this.endOfCell();
+                    } else if (c == '\n') {
+                        this.endOfLine();
+                    } else if ((c != '\r') && (c != '"')) {
+                        this.append(c);
+                    }
+                }
+            }
+            this.endOfLine();
+            return this.build();
+        }
+
+        private void append(final char c) {
+            if (this.cellLength == this.cell.length) {
+                this.cell = Arrays.copyOf(this.cell, 2 * this.cell.length);
+            }
+            this.cell[this.cellLength++] = c;
+            if (c > ' ') {
+                this.lineIsBlank = false;
+            }
+        }
+
+        private void endOfCell() {
+            int start = 0;
+            int end = this.cellLength;
+            while ((start < end) && (this.cell[start] <= ' ')) {
+                start++;
+            }
+            while ((end > start) && (this.cell[end - 1] <= ' ')) {
+                end--;
+            }
+
+            if (!this.firstLineDone) {
+                this.firstLine.add(new String(this.cell, start, end - start));
+            } else {
+                this.ensureColumn(this.column);
+                if (end > start) {
+                    this.notEmpty[this.column] = true;
+                    this.values[this.column][this.rows] = CsvColumns.parseDouble(this.cell, start, end - start);
+                }
+                this.column++;
+            }
+            this.cellLength = 0;
+        }
+
+        private void endOfLine() {
+            if (this.lineIsBlank) {
+                // skip blank lines, and the separators they may contain
+                this.cellLength = 0;
+                if (!this.firstLineDone) {
+                    this.firstLine.clear();
+                }
+                this.column = 0;
+                return;
+            }
+            if (this.cellLength > 0) {
+                this.endOfCell();
+            }
+
+            if (!this.firstLineDone) {
+                this.firstLineDone = true;
+                this.readFirstLine();
+            } else {
+                this.endOfRow();
+            }
+            this.lineIsBlank = true;
+        }
+
+        /**
+         * The first line is a header unless its first non empty cell is a number.
+         */
+        private void readFirstLine() {
+            final List<String> cells = this.firstLine;
+            this.firstLine = null;
+
+            String first = null;
+            for (final String value : cells) {
+                if (!value.isEmpty()) {
+                    first = value;
+                    break;
+                }
+            }
+
+            boolean isHeader = true;
+            if (first != null) {
+                try {
+                    Double.parseDouble(first);
+                    isHeader = false;
+                } catch (final NumberFormatException e) {
+                    isHeader = true;
+                }
+            }
+
+            if (isHeader) {
+                this.header = cells.toArray(new String[cells.size()]);
+                this.ensureColumn(this.header.length - 1);
+                for (int i = 0; i < this.header.length; i++) {
+                    this.notEmpty[i] = !this.header[i].isEmpty();
+                }
+            } else {
+                // data line: convert it as the other ones
+                for (final String value : cells) {
+                    this.ensureColumn(this.column);
+                    if (!value.isEmpty()) {
+                        this.notEmpty[this.column] = true;
+                        this.values[this.column][this.rows] = CsvColumns.parseDouble(value.toCharArray(), 0,
+                                value.length());
+                    }
+                    this.column++;
+                }
+                this.endOfRow();
+            }
+        }
+
+        private void endOfRow() {
+            // missing cells are NaN
+            for (int c = this.column; c < this.values.length; c++) {
+                this.values[c][this.rows] = Double.NaN;
+            }
+            this.column = 0;
+            this.rows++;
+        }
+
+        /**
+         * Make sure the column exists and can receive the current row.
+         */
+        private void ensureColumn(final int index) {
+            if (index >= this.values.length) {
+                final int capacity = this.values.length > 0 ? this.values[0].length
+                        : CsvColumns.INITIAL_CAPACITY;
+                final int oldCount = this.values.length;
+                this.values = Arrays.copyOf(this.values, index + 1);
+                this.notEmpty = Arrays.copyOf(this.notEmpty, index + 1);
+                for (int c = oldCount; c <= index; c++) {
+                    this.values[c] = new double[capacity];
+                    // the previous rows did not have this column
+                    Arrays.fill(this.values[c], 0, this.rows, Double.NaN);
+                }
+            }
+            if (this.rows >= this.values[0].length) {
+                final int capacity = 2 * this.values[0].length;
+                for (int c = 0; c < this.values.length; c++) {
+                    this.values[c] = Arrays.copyOf(this.values[c], capacity);
+                }
+            }
+            this.values[index][this.rows] = Double.NaN;
+        }
+
+        private CsvColumns build() {
+            final List<String> names = new ArrayList<>();
+            final List<double[]> columns = new ArrayList<>();
+            for (int c = 0; c < this.values.length; c++) {
+                if (this.notEmpty[c]) {
+                    columns.add(Arrays.copyOf(this.values[c], this.rows));
+                    if (this.header != null) {
+                        names.add(c < this.header.length ? this.header[c] : "");
+                    }
+                }
+            }
+            return new CsvColumns(this.header == null ? null : names.toArray(new String[names.size()]),
+                    columns.toArray(new double[columns.size()][]));
+        }
+    }
+
+    /**
+     * Convert a number without creating a string when it can be done exactly: up to 18 significant digits and a
+     * decimal exponent small enough for the powers of ten to be exact doubles. Otherwise falls back to
+     * {@link Double#parseDouble(String)}.
+     *
+     * @return the value, or NaN if the text is not a number
+     */
+    static double parseDouble(final char[] text, final int offset, final int length) {
+        final int end = offset + length;
+        int index = offset;
+        boolean negative = false;
+        if ((index < end) && ((text[index] == '+') || (text[index] == '-'))) {
+            negative = text[index] == '-';
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fast = true;
+        boolean dot = false;
+        for (; index < end; index++) {
+            final char c = text[index];
+            if ((c >= '0') && (c <= '9')) {
+                anyDigit = true;
+                if ((mantissa == 0) && (c == '0')) {
+                    // leading zeros are not significant
+                    if (dot) {
+                        exponent--;
+                    }
+                } else if (digits < 18) {
+                    mantissa = (10 * mantissa) + (c - '0');
+                    digits++;
+                    if (dot) {
+                        exponent--;
+                    }
+                } else {
+                    fast = false;
+                }
+            } else if ((c == '.') && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+
+        if ((index < end) && anyDigit && ((text[index] == 'e') || (text[index] == 'E'))) {
+            index++;
+            boolean negativeExponent = false;
+            if ((index < end) && ((text[index] == '+') || (text[index] == '-'))) {
+                negativeExponent = text[index] == '-';
+                index++;
+            }
+            int value = 0;
+            final int exponentStart = index;
+            for (; (index < end) && (text[index] >= '0') && (text[index] <= '9'); index++) {
+                if (value < 10000) {
+                    value = (10 * value) + (text[index] - '0');
+                }
+            }
+            if (index == exponentStart) {
+                fast = false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (fast && anyDigit && (index == end) && (mantissa < (1L << 53))) {
+            double result;
+            if (mantissa == 0) {
+                result = 0.0;
+            } else if ((exponent >= 0) && (exponent < CsvColumns.POWERS_OF_TEN.length)) {
+                result = mantissa * CsvColumns.POWERS_OF_TEN[exponent];
+            } else if ((exponent < 0) && (-exponent < CsvColumns.POWERS_OF_TEN.length)) {
+                result = mantissa / CsvColumns.POWERS_OF_TEN[-exponent];
+            } else {
+                result = CsvColumns.slowParseDouble(text, offset, length);
+                return result;
+            }
+            return negative ? -result : result;
+        }
+        return CsvColumns.slowParseDouble(text, offset, length);
+    }
+
+    private static double slowParseDouble(final char[] text, final int offset, final int length) {
+        try {
+            return Double.parseDouble(new String(text, offset, length));
+        } catch (final NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
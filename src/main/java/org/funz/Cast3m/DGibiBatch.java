@@ -0,0 +1,296 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.funz.Cast3m.GibianeLexer.Statement;
+
+/**
+ * Batch of design points run by a single Cast3m process.<br>
+ * The driver dataset holds the statements of each point one after the other, between two {@code MESS} markers,
+ * without their {@code FIN}: the interpreter starts, and loads its procedures, once for all the points. The names of
+ * the files read by a point ({@code OPTI DONN}, {@code OPTI ACQU}, {@code OPTI REST}, {@code UTIL PROC}) are
+ * rewritten relatively to its dataset, and the names of the files it writes ({@code OPTI SORT}, {@code OPTI SAUV},
+ * {@code @EXCEL1}) relatively to its result directory, so that each point keeps its own output files. Once the run is
+ * over, {@link #split(File, List)} cuts the listing back into one {@code castem.out} per point.<br>
+ * The points share the variables of the interpreter, and file names built at run time ({@code CHAI}) are not
+ * rewritten.
+ */
+final class DGibiBatch {
+
+    static final String BEGIN_MARKER = "FUNZ_POINT_BEGIN ";
+
+    static final String END_MARKER = "FUNZ_POINT_END ";
+
+    /**
+     * A design point: a dataset, the directory of its results, and the variables to set before it.
+     */
+    static final class Point {
+
+        private final File deck;
+
+        private final File dir;
+
+        private final Map<String, String> assignments;
+
+        /**
+         * @param deck
+         *            the dataset of the point.
+         * @param dir
+         *            the directory of the results of the point.
+         * @param assignments
+         *            the values of the variables set before the dataset, as Gibiane expressions.
+         */
+        Point(final File deck, final File dir, final Map<String, String> assignments) {
+            this.deck = deck;
+            this.dir = dir;
+            this.assignments = assignments;
+        }
+
+        /**
+         * @param deck
+         *            a compiled dataset, its results being written next to it.
+         */
+        Point(final File deck) {
+            this(deck, deck.getAbsoluteFile().getParentFile(), Collections.<String, String> emptyMap());
+        }
+
+        File getDir() {
+            return this.dir;
+        }
+    }
+
+    private DGibiBatch() {
+        // Suppress default constructor for noninstantiability.
+        throw new AssertionError();
+    }
+
+    /**
+     * Write the driver dataset of the points.
+     *
+     * @param driver
+     *            the driver dataset, Cast3m being run in its directory.
+     * @param points
+     *            the design points.
+     * @throws IOException
+     *             if a dataset cannot be read or the driver cannot be written
+     */
+    static void write(final File driver, final List<Point> points) throws IOException {
+        final File driverDir = driver.getAbsoluteFile().getParentFile();
+        try (final BufferedWriter out = Files.newBufferedWriter(driver.toPath(), StandardCharsets.ISO_8859_1)) {
+            for (int i = 0; i < points.size(); i++) {
+                final Point point = points.get(i);
+                out.write("MESS '" + DGibiBatch.BEGIN_MARKER + i + "';\n");
+                for (final Entry<String, String> assignment : point.assignments.entrySet()) {
+                    out.write(assignment.getKey() + " = " + assignment.getValue() + ";\n");
+                }
+                DGibiBatch.writePoint(out, point, driverDir);
+                out.write("MESS '" + DGibiBatch.END_MARKER + i + "';\n");
+            }
+            out.write("FIN;\n");
+        }
+    }
+
+    /**
+     * Copy the dataset of a point, line by line, without its {@code FIN} and with its file names rewritten.
+     *
+     * @param out
+     *            the driver dataset, or the console of a Cast3m process.
+     * @param point
+     *            the design point.
+     * @param driverDir
+     *            the working directory of Cast3m.
+     * @throws IOException
+     *             if the dataset cannot be read or written
+     */
+    static void writePoint(final Writer out, final Point point, final File driverDir) throws IOException {
+        final List<String> lines = Files.readAllLines(point.deck.toPath(), StandardCharsets.ISO_8859_1);
+        final String inputPrefix = DGibiBatch.prefix(driverDir, point.deck.getAbsoluteFile().getParentFile());
+        final String outputPrefix = DGibiBatch.prefix(driverDir, point.dir.getAbsoluteFile());
+
+        final Map<String, String> renames = new LinkedHashMap<>();
+        final Set<Integer> finLines = new LinkedHashSet<>();
+        for (final Statement statement : GibianeLexer.parse(lines)) {
+            if ((statement.size() == 1) && statement.isKeyword(0, "fin")) {
+                finLines.add(statement.getLine() - 1);
+            } else if (statement.isKeyword(0, "option") && (statement.size() == 3)
+                    && (statement.getType(2) == GibianeLexer.STRING)) {
+                if (statement.isKeyword(1, "sortir") || statement.isKeyword(1, "sauver")) {
+                    DGibiBatch.rename(renames, statement.getToken(2), outputPrefix);
+                } else if (statement.isKeyword(1, "donnees") || statement.isKeyword(1, "acquerir")
+                        || statement.isKeyword(1, "restituer")) {
+                    DGibiBatch.rename(renames, statement.getToken(2), inputPrefix);
+                }
+            } else if (statement.isKeyword(0, "utilisateur") && statement.isKeyword(1, "procedur")
+                    && (statement.size() == 3) && (statement.getType(2) == GibianeLexer.STRING)) {
+                DGibiBatch.rename(renames, statement.getToken(2), inputPrefix);
+            } else if (statement.isWord(0, "@excel1") && (statement.size() >= 3)
+                    && (statement.getType(2) == GibianeLexer.STRING)) {
+                DGibiBatch.rename(renames, statement.getToken(2), outputPrefix);
+            }
+        }
+
+        for (int l = 0; l < lines.size(); l++) {
+            String line = lines.get(l);
+            if (finLines.contains(l)) {
+                line = line.replaceFirst("(?i)\\bFIN\\s*;", "");
+            }
+            for (final Entry<String, String> rename : renames.entrySet()) {
+                line = line.replace(rename.getKey(), rename.getValue());
+            }
+            out.write(line);
+            out.write('\n');
+        }
+    }
+
+    private static void rename(final Map<String, String> renames, final String name, final String prefix) {
+        final File file = new File(name.trim());
+        if (!prefix.isEmpty() && !file.isAbsolute() && !name.trim().isEmpty()) {
+            renames.put('\'' + name + '\'', '\'' + prefix + name.trim() + '\'');
+        }
+    }
+
+    /**
+     * @return the path of the directory relative to the driver directory, with a trailing '/', or an empty string
+     *         for the driver directory itself
+     */
+    private static String prefix(final File driverDir, final File dir) {
+        final String relative = driverDir.toPath().relativize(dir.toPath()).toString().replace(File.separatorChar,
+                '/');
+        return relative.isEmpty() ? "" : relative + '/';
+    }
+
+    /**
+     * Cut the listing of a batch into one listing per point, in its result directory. Each one starts with the
+     * banner of the listing and ends with an exit code line, so that it reads as the listing of a single run: a
+     * completed point gets the error level of its own statements (0 without error), and the point running when the
+     * batch stopped gets the rest of the listing, with the exit code of the batch.
+     *
+     * @param listing
+     *            the listing of the batch.
+     * @param points
+     *            the design points, in the order of the driver dataset.
+     * @param name
+     *            the name of the listing of each point.
+     * @throws IOException
+     *             if a listing cannot be read or written
+     */
+    static void split(final File listing, final List<Point> points, final String name) throws IOException {
+        final List<String> banner = new ArrayList<>();
+        boolean begun = false;
+        Writer current = null;
+        int level = 0;
+        try (final BufferedReader in = Files.newBufferedReader(listing.toPath(), StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                final String trimmed = line.trim();
+                final int begin = DGibiBatch.markerIndex(trimmed, DGibiBatch.BEGIN_MARKER, points.size());
+                final int end = DGibiBatch.markerIndex(trimmed, DGibiBatch.END_MARKER, points.size());
+                if (begin >= 0) {
+                    if (current != null) {
+                        current.close();
+                    }
+                    begun = true;
+                    level = 0;
+                    current = Files.newBufferedWriter(new File(points.get(begin).dir, name).toPath(),
+                            StandardCharsets.ISO_8859_1);
+                    for (final String l : banner) {
+                        current.write(l);
+                        current.write('\n');
+                    }
+                } else if (end >= 0) {
+                    if (current != null) {
+                        // where Cast3m.sh reads the exit code, 4 lines before the end
+                        current.write(" ***** ERREUR : " + level + " *****\n\n\n\n");
+                        current.close();
+                        current = null;
+                    }
+                } else if (trimmed.contains(DGibiBatch.BEGIN_MARKER) || trimmed.contains(DGibiBatch.END_MARKER)) {
+                    // echo of the MESS of a marker
+                    continue;
+                } else if (current != null) {
+                    current.write(line);
+                    current.write('\n');
+                    if (level == 0) {
+                        level = Cast3mWorker.getErrorLevel(trimmed);
+                    }
+                } else if (!begun) {
+                    banner.add(line);
+                }
+            }
+        } finally {
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+
+    /**
+     * @return the index of the point of the marker line, or -1
+     */
+    private static int markerIndex(final String line, final String marker, final int count) {
+        if (!line.startsWith(marker)) {
+            return -1;
+        }
+        try {
+            final int index = Integer.parseInt(line.substring(marker.length()).trim());
+            return (index >= 0) && (index < count) ? index : -1;
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Command line, for the launch scripts:
+     * <ul>
+     * <li>{@code write driver.dgibi deck...}: driver dataset of compiled datasets, the results of each one being
+     * written next to it;</li>
+     * <li>{@code split batch.out deck...}: split the listing of the batch into a {@code castem.out} next to each
+     * dataset.</li>
+     * </ul>
+     *
+     * @param args
+     *            the command and its files.
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    public static void main(final String[] args) throws IOException {
+        if ((args.length < 3) || !Arrays.asList("write", "split").contains(args[0])) {
+            System.err.println("Usage: DGibiBatch write driver.dgibi deck.dgibi...");
+            System.err.println("       DGibiBatch split batch.out deck.dgibi...");
+            System.exit(1);
+        }
+        final List<Point> points = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            points.add(new Point(new File(args[i])));
+        }
+        if ("write".equals(args[0])) {
+            DGibiBatch.write(new File(args[1]), points);
+        } else {
+            DGibiBatch.split(new File(args[1]), points, Cast3mIOPlugin.OUTFILE_NAME);
+        }
+    }
+}
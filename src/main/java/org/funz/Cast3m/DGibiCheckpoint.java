@@ -0,0 +1,375 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.funz.Cast3m.GibianeLexer.Statement;
+
+/**
+ * Checkpoint cache of the common beginning of the cases of a study.<br>
+ * The variables of a study are substituted before the dataset reaches the calculator, so the beginning shared by the
+ * cases (mesh, model, assembly) is found by comparing the dataset with the previous one of the same name: it ends at
+ * the first statement which differs, the first one using a substituted variable. This prefix is run once with a final
+ * {@code SAUV}, the saved state being cached under the hash of the prefix and of the files it reads, and the next
+ * cases are rewritten to {@code REST} this state instead of running their prefix again, their dataset being restored
+ * once they ran. The {@code OPTION} and {@code UTILISATEUR PROCEDUR} statements of the prefix are replayed before the
+ * {@code REST}. The previous dataset is the last one of the same name run in a sibling directory of the case, the
+ * directory of the study.<br>
+ * The prefix stops before the statements writing files or the listing ({@code OPTI SORT}, {@code SAUV},
+ * {@code MESS}, {@code LIST}, {@code TRAC}, {@code @EXCEL1}...), and outside of any {@code DEBP}, {@code REPE} or
+ * {@code SI} block.<br>
+ * The cache is enabled by the {@value #ENABLED_PROPERTY} system property, in the {@value #DIRECTORY_PROPERTY}
+ * directory (default: {@code ~/.cache/funz/Cast3m/checkpoints}), the least recently used states being evicted above
+ * {@value #SIZE_PROPERTY} MB (default: 2048). The prefix is run with the {@value #COMMAND_PROPERTY} command (default:
+ * {@code castem20}).
+ */
+final class DGibiCheckpoint {
+
+    static final String ENABLED_PROPERTY = "cast3m.checkpoint";
+
+    static final String DIRECTORY_PROPERTY = "cast3m.checkpoint.dir";
+
+    static final String SIZE_PROPERTY = "cast3m.checkpoint.size";
+
+    static final String COMMAND_PROPERTY = "cast3m.checkpoint.command";
+
+    /** Saved state restored by a case, in its directory (not hashed nor stored by the run cache of Cast3m.sh) */
+    static final String CHECKPOINT_FILE = ".cast3m_checkpoint.sauv";
+
+    private static final String PREFIX_FILE = ".cast3m_prefix.dgibi";
+
+    /** Dataset of the case before its rewriting, restored by {@link #clean(File)} */
+    private static final String ORIGINAL_FILE = ".cast3m_original";
+
+    private static final String SUFFIX = ".sauv";
+
+    /** Suffix of the last dataset of each name and study */
+    private static final String LAST_SUFFIX = ".last";
+
+    /** Statements which write files or the listing, not run by the prefix */
+    private static final List<String> OUTPUT_KEYWORDS = Arrays.asList("message", "liste", "sortir", "sauver",
+            "trace", "restituer", "fin");
+
+    private final File directory;
+
+    private final List<String> command;
+
+    /** Maximum size of the cache (bytes) */
+    private final long maxSize;
+
+    /**
+     * @param directory
+     *            the directory of the cached states, created on first store.
+     * @param command
+     *            the command running a dataset, its name being appended.
+     * @param maxSizeMb
+     *            the maximum size of the cache (MB).
+     */
+    DGibiCheckpoint(final File directory, final List<String> command, final long maxSizeMb) {
+        this.directory = directory;
+        this.command = new ArrayList<>(command);
+        this.maxSize = 1024 * 1024 * maxSizeMb;
+    }
+
+    /**
+     * @return the checkpoint cache configured by the system properties, or null if it is disabled
+     */
+    static DGibiCheckpoint getDefault() {
+        if (!Boolean.getBoolean(DGibiCheckpoint.ENABLED_PROPERTY)) {
+            return null;
+        }
+        final String dir = System.getProperty(DGibiCheckpoint.DIRECTORY_PROPERTY);
+        final File cache = new File(new File(new File(System.getProperty("user.home"), ".cache"), "funz"), "Cast3m");
+        final String command = System.getProperty(DGibiCheckpoint.COMMAND_PROPERTY, "castem20");
+        return new DGibiCheckpoint(dir != null ? new File(dir) : new File(cache, "checkpoints"),
+                Arrays.asList(command.trim().split("\\s+")), Long.getLong(DGibiCheckpoint.SIZE_PROPERTY, 2048L));
+    }
+
+    /**
+     * @param statements
+     *            the statements of the dataset.
+     * @param previous
+     *            the statements of the previous dataset.
+     * @return the number of statements of the common prefix which may be saved, up to the first different one
+     */
+    static int prefixLength(final List<Statement> statements, final List<Statement> previous) {
+        int depth = 0;
+        int length = 0;
+        for (int i = 0; (i < statements.size()) && (i < previous.size()); i++) {
+            final Statement statement = statements.get(i);
+            if (!statement.getText().equals(previous.get(i).getText()) || DGibiCheckpoint.isOutput(statement)) {
+                break;
+            }
+            depth += DGibiCheckpoint.depthChange(statement);
+            if (depth == 0) {
+                length = i + 1;
+            }
+        }
+        // the rest of the dataset starts on its own line
+        while ((length > 0) && (length < statements.size())
+                && (statements.get(length - 1).getLine() == statements.get(length).getLine())) {
+            length--;
+        }
+        return length < statements.size() ? length : 0;
+    }
+
+    /**
+     * @return 1 if the statement opens a block, -1 if it closes one, 0 otherwise
+     */
+    private static int depthChange(final Statement statement) {
+        if (statement.isKeyword(0, "debproc") || statement.isKeyword(0, "repeter") || statement.isKeyword(0, "si")) {
+            return 1;
+        }
+        if (statement.isKeyword(0, "finproc") || statement.isKeyword(0, "finsi")
+                || (statement.isWord(0, "fin") && (statement.size() == 2))) {
+            return -1;
+        }
+        return 0;
+    }
+
+    private static boolean isOutput(final Statement statement) {
+        for (final String keyword : DGibiCheckpoint.OUTPUT_KEYWORDS) {
+            if (statement.isKeyword(0, keyword)) {
+                // FIN of a REPE block
+                return !"fin".equals(keyword) || (statement.size() == 1);
+            }
+        }
+        return statement.isWord(0, "@excel1")
+                || (statement.isKeyword(0, "option") && (statement.isKeyword(1, "sortir")
+                        || statement.isKeyword(1, "sauver") || statement.isKeyword(1, "restituer")));
+    }
+
+    /**
+     * @return true if the statement is replayed before the {@code REST}, the state it sets not being saved
+     */
+    private static boolean isReplayed(final Statement statement) {
+        return statement.isKeyword(0, "option")
+                || (statement.isKeyword(0, "utilisateur") && statement.isKeyword(1, "procedur"));
+    }
+
+    /**
+     * Rewrite a compiled dataset to restore the saved state of its prefix, the prefix being run first if its state is
+     * not cached yet. The dataset is restored by {@link #clean(File)} once the case ran.
+     *
+     * @param deck
+     *            the compiled dataset, in the directory of the case.
+     * @return true if the dataset was rewritten
+     * @throws IOException
+     *             if the dataset cannot be read or written
+     */
+    boolean apply(final File deck) throws IOException {
+        final List<String> lines = Files.readAllLines(deck.toPath(), StandardCharsets.ISO_8859_1);
+        final List<Statement> statements = GibianeLexer.parse(lines);
+        Files.createDirectories(this.directory.toPath());
+        final File last = this.getLast(deck);
+        if (last == null) {
+            return false;
+        }
+        final List<Statement> previous = last.isFile() ? GibianeLexer.parse(last) : Collections.<Statement> emptyList();
+        DGibiCheckpoint.write(last, lines);
+
+        final int length = DGibiCheckpoint.prefixLength(statements, previous);
+        // the statements of the prefix run again, outside of any block
+        final List<String> replayed = new ArrayList<>();
+        boolean saved = false;
+        int depth = 0;
+        for (int i = 0; i < length; i++) {
+            final Statement statement = statements.get(i);
+            if ((depth == 0) && DGibiCheckpoint.isReplayed(statement)) {
+                replayed.add(statement.getText());
+            } else {
+                saved = true;
+            }
+            depth += DGibiCheckpoint.depthChange(statement);
+        }
+        if (!saved) {
+            return false;
+        }
+        final int restLine = statements.get(length).getLine() - 1;
+        final List<String> prefix = lines.subList(0, restLine);
+        final String key = this.key(deck, prefix);
+        if (key == null) {
+            return false;
+        }
+        final File state = new File(this.directory, key + DGibiCheckpoint.SUFFIX);
+        if (state.isFile()) {
+            state.setLastModified(System.currentTimeMillis());
+        } else if (!this.save(deck.getAbsoluteFile().getParentFile(), prefix, state)) {
+            return false;
+        }
+
+        final File checkpoint = new File(deck.getAbsoluteFile().getParentFile(), DGibiCheckpoint.CHECKPOINT_FILE);
+        Files.deleteIfExists(checkpoint.toPath());
+        try {
+            Files.createLink(checkpoint.toPath(), state.toPath());
+        } catch (final IOException | UnsupportedOperationException e) {
+            // other file system
+            Files.copy(state.toPath(), checkpoint.toPath());
+        }
+
+        final File original = new File(deck.getAbsoluteFile().getParentFile(), DGibiCheckpoint.ORIGINAL_FILE);
+        Files.copy(deck.toPath(), original.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.COPY_ATTRIBUTES);
+
+        final List<String> rewritten = new ArrayList<>();
+        // for the run cache of Cast3m.sh, which does not hash the state itself
+        rewritten.add("* Funz checkpoint " + key);
+        rewritten.addAll(replayed);
+        rewritten.add("OPTI REST '" + DGibiCheckpoint.CHECKPOINT_FILE + "';");
+        rewritten.add("REST;");
+        rewritten.addAll(lines.subList(restLine, lines.size()));
+        DGibiCheckpoint.write(deck, rewritten);
+        return true;
+    }
+
+    /**
+     * @return the last dataset of the name of the deck run in the directory of its study (the parent of the directory
+     *         of the case), so that the studies sharing a dataset name do not compare their datasets, or null
+     */
+    private File getLast(final File deck) {
+        try {
+            final File study = deck.getCanonicalFile().getParentFile().getParentFile();
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final String path = study == null ? "" : study.getPath();
+            final String hash = OutputCache.toHex(digest.digest(path.getBytes(StandardCharsets.UTF_8)));
+            return new File(this.directory, hash.substring(0, 16) + '-' + deck.getName() + DGibiCheckpoint.LAST_SUFFIX);
+        } catch (final IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the hash of the command, of the prefix and of the other files read by the dataset, or null
+     */
+    private String key(final File deck, final List<String> prefix) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(this.command.toString().getBytes(StandardCharsets.UTF_8));
+            for (final String line : prefix) {
+                digest.update((byte) '\n');
+                digest.update(line.getBytes(StandardCharsets.ISO_8859_1));
+            }
+            final File root = deck.getCanonicalFile();
+            final TreeMap<File, String> files = new TreeMap<>(new DGibiGraph(deck).getFiles());
+            for (final Entry<File, String> file : files.entrySet()) {
+                if (!file.getKey().equals(root)) {
+                    digest.update((file.getKey().getName() + '=' + file.getValue()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return OutputCache.toHex(digest.digest());
+        } catch (final IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Run the prefix in the directory of the case, and store its saved state.
+     *
+     * @return true if the state was stored
+     */
+    private boolean save(final File dir, final List<String> prefix, final File state) throws IOException {
+        final File deck = new File(dir, DGibiCheckpoint.PREFIX_FILE);
+        final File saved = new File(dir, DGibiCheckpoint.CHECKPOINT_FILE);
+        final File listing = new File(this.directory, state.getName() + ".out");
+        final List<String> lines = new ArrayList<>(prefix);
+        lines.add("OPTI SAUV '" + DGibiCheckpoint.CHECKPOINT_FILE + "';");
+        lines.add("SAUV;");
+        lines.add("FIN;");
+        DGibiCheckpoint.write(deck, lines);
+        try {
+            final List<String> command = new ArrayList<>(this.command);
+            command.add(deck.getName());
+            final int exit = new ProcessBuilder(command).directory(dir).redirectErrorStream(true)
+                    .redirectOutput(listing).start().waitFor();
+            final String output = new String(Files.readAllBytes(listing.toPath()), StandardCharsets.ISO_8859_1);
+            if ((exit != 0) || output.contains(ListingTail.ERROR_MARKER) || !saved.isFile()
+                    || (saved.length() == 0)) {
+                System.err.println("Unable to save the prefix of the dataset, see " + listing);
+                return false;
+            }
+            // rename, so that concurrent cases never see a partial state
+            final File tmp = File.createTempFile(state.getName(), ".tmp", this.directory);
+            Files.move(saved.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp.toPath(), state.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(listing.toPath());
+            this.evict();
+            return true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            Files.deleteIfExists(deck.toPath());
+            Files.deleteIfExists(saved.toPath());
+        }
+    }
+
+    /**
+     * Delete the least recently used states above the maximum size of the cache.
+     */
+    private void evict() {
+        final File[] states = this.directory
+                .listFiles((dir, name) -> name.endsWith(DGibiCheckpoint.SUFFIX));
+        if (states == null) {
+            return;
+        }
+        long total = 0;
+        for (final File state : states) {
+            total += state.length();
+        }
+        Arrays.sort(states, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; (i < states.length - 1) && (total > this.maxSize); i++) {
+            total -= states[i].length();
+            states[i].delete();
+        }
+    }
+
+    /**
+     * Once a case ran, restore its dataset as written before {@link #apply(File)}, and delete the state it restored.
+     *
+     * @param deck
+     *            the dataset of the case.
+     * @throws IOException
+     *             if the dataset cannot be restored
+     */
+    static void clean(final File deck) throws IOException {
+        final File dir = deck.getAbsoluteFile().getParentFile();
+        new File(dir, DGibiCheckpoint.CHECKPOINT_FILE).delete();
+        final File original = new File(dir, DGibiCheckpoint.ORIGINAL_FILE);
+        if (original.isFile()) {
+            Files.move(original.toPath(), deck.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static void write(final File file, final List<String> lines) throws IOException {
+        final File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            Files.write(tmp.toPath(), lines, StandardCharsets.ISO_8859_1);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+}
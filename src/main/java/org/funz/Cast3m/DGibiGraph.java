@@ -0,0 +1,296 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.funz.Cast3m.GibianeLexer.Statement;
+
+/**
+ * Dependency graph of a dataset split over several files.<br>
+ * A dgibi file pulls other files in with:
+ * <ul>
+ * <li>{@code OPTI DONN 'file';}: the statements of the file are read at this point;</li>
+ * <li>{@code UTIL PROC 'file.procedur';} and calls of {@code @name} procedures defined in a {@code name.procedur}
+ * file of the same directory: the procedures are expanded at their first reference;</li>
+ * <li>{@code OPTI ACQU 'file';}: a data file read by {@code ACQU}, not parsed but part of the dependencies.</li>
+ * </ul>
+ * Each file is parsed once, and its statements are kept in a cache shared by all the datasets, checked against the
+ * modification date and size of the file, then against its hash.
+ */
+class DGibiGraph {
+
+    private static final String PROCEDURE_SUFFIX = ".procedur";
+
+    /** Maximum number of parsed files kept in memory */
+    private static final int CACHE_SIZE = 512;
+
+    /** Parsed files by canonical path, least recently used first */
+    private static final Map<String, Node> NODES = new LinkedHashMap<String, Node>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Node> eldest) {
+            return this.size() > DGibiGraph.CACHE_SIZE;
+        }
+    };
+
+    /**
+     * A parsed file and the files it references.
+     */
+    private static final class Node {
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final String hash;
+
+        private final List<Statement> statements;
+
+        /** Files referenced by each statement, by statement index */
+        private final Map<Integer, List<File>> includes;
+
+        private final List<File> dataFiles;
+
+        private Node(final File file, final String hash) {
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.hash = hash;
+            this.statements = GibianeLexer.parse(file);
+            this.includes = new LinkedHashMap<>();
+            this.dataFiles = new ArrayList<>();
+
+            final File dir = file.getAbsoluteFile().getParentFile();
+            final Map<String, File> procedures = DGibiGraph.listProcedures(dir);
+            for (int i = 0; i < this.statements.size(); i++) {
+                final List<File> files = DGibiGraph.findIncludes(this.statements.get(i), dir, procedures,
+                        this.dataFiles);
+                if (!files.isEmpty()) {
+                    this.includes.put(i, files);
+                }
+            }
+        }
+
+        private Node(final Node node, final File file) {
+            // same content, new date
+            this.lastModified = file.lastModified();
+            this.length = node.length;
+            this.hash = node.hash;
+            this.statements = node.statements;
+            this.includes = node.includes;
+            this.dataFiles = node.dataFiles;
+        }
+    }
+
+    private final List<File> roots = new ArrayList<>();
+
+    /** All the files of the graph, with their hash */
+    private final Map<File, String> files = new LinkedHashMap<>();
+
+    /**
+     * @param inputs
+     *            the dgibi files of the dataset.
+     */
+    DGibiGraph(final File... inputs) {
+        final Set<File> included = new HashSet<>();
+        for (final File input : inputs) {
+            this.visit(input, included, new HashSet<File>(), true);
+        }
+        // the inputs pulled in by another input are not parsed on their own
+        for (final File input : inputs) {
+            if (!included.contains(DGibiGraph.canonical(input))) {
+                this.roots.add(input);
+            }
+        }
+    }
+
+    /**
+     * Walk the graph, to know all its files and the ones included by another file.
+     */
+    private void visit(final File file, final Set<File> included, final Set<File> path, final boolean root) {
+        final File canonical = DGibiGraph.canonical(file);
+        if (!path.add(canonical)) {
+            // include cycle
+            return;
+        }
+        if (!root) {
+            included.add(canonical);
+        }
+        if (!this.files.containsKey(canonical)) {
+            final Node node = DGibiGraph.node(canonical);
+            this.files.put(canonical, node == null ? "" : node.hash);
+            if (node != null) {
+                for (final File data : node.dataFiles) {
+                    this.files.put(DGibiGraph.canonical(data), OutputCache.hash(data));
+                }
+                for (final List<File> includes : node.includes.values()) {
+                    for (final File include : includes) {
+                        this.visit(include, included, path, false);
+                    }
+                }
+            }
+        }
+        path.remove(canonical);
+    }
+
+    /**
+     * @return the input files which are not included by another one
+     */
+    List<File> getRoots() {
+        return this.roots;
+    }
+
+    /**
+     * @return all the files of the graph (dgibi, procedures and data), associated to the hash of their content
+     */
+    Map<File, String> getFiles() {
+        return this.files;
+    }
+
+    /**
+     * @param root
+     *            a root of the graph.
+     * @return the statements of the root, the included files being expanded in place (once each)
+     */
+    List<Statement> expand(final File root) {
+        final List<Statement> result = new ArrayList<>();
+        DGibiGraph.expand(DGibiGraph.canonical(root), result, new HashSet<File>());
+        return result;
+    }
+
+    private static void expand(final File file, final List<Statement> result, final Set<File> done) {
+        if (!done.add(file)) {
+            return;
+        }
+        final Node node = DGibiGraph.node(file);
+        if (node == null) {
+            return;
+        }
+        for (int i = 0; i < node.statements.size(); i++) {
+            result.add(node.statements.get(i));
+            final List<File> includes = node.includes.get(i);
+            if (includes != null) {
+                for (final File include : includes) {
+                    DGibiGraph.expand(DGibiGraph.canonical(include), result, done);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the parsed file, from the cache if it did not change, or null if it does not exist
+     */
+    private static Node node(final File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        final String path = file.getPath();
+        Node node;
+        synchronized (DGibiGraph.NODES) {
+            node = DGibiGraph.NODES.get(path);
+        }
+        if ((node != null) && (node.lastModified == file.lastModified()) && (node.length == file.length())) {
+            return node;
+        }
+
+        final String hash = OutputCache.hash(file);
+        if ((node != null) && node.hash.equals(hash)) {
+            node = new Node(node, file);
+        } else {
+            node = new Node(file, hash);
+        }
+        synchronized (DGibiGraph.NODES) {
+            DGibiGraph.NODES.put(path, node);
+        }
+        return node;
+    }
+
+    /**
+     * @param procedures
+     *            the procedure files of the directory, by lower case procedure name.
+     * @param dataFiles
+     *            completed with the data files read by {@code ACQU}.
+     * @return the dgibi files pulled in by the statement
+     */
+    private static List<File> findIncludes(final Statement statement, final File dir,
+            final Map<String, File> procedures, final List<File> dataFiles) {
+        if (statement.isKeyword(0, "option") && (statement.size() == 3)
+                && (statement.getType(2) == GibianeLexer.STRING)) {
+            final File file = DGibiGraph.resolve(dir, statement.getToken(2));
+            if (statement.isKeyword(1, "donnees")) {
+                return Collections.singletonList(file);
+            } else if (statement.isKeyword(1, "acquerir")) {
+                dataFiles.add(file);
+            }
+            return Collections.emptyList();
+        }
+        if (statement.isKeyword(0, "utilisateur") && statement.isKeyword(1, "procedur") && (statement.size() == 3)
+                && (statement.getType(2) == GibianeLexer.STRING)) {
+            return Collections.singletonList(DGibiGraph.resolve(dir, statement.getToken(2)));
+        }
+
+        // calls of user procedures
+        final Set<File> called = new LinkedHashSet<>();
+        for (int i = 0; (i < statement.size()) && !procedures.isEmpty(); i++) {
+            final String token = statement.getToken(i);
+            if ((statement.getType(i) == GibianeLexer.WORD) && token.startsWith("@")) {
+                final File procedure = procedures.get(token.substring(1).toLowerCase(Locale.ROOT));
+                if (procedure != null) {
+                    called.add(procedure);
+                }
+            }
+        }
+        return new ArrayList<>(called);
+    }
+
+    /**
+     * @return the {@code name.procedur} files of the directory, by lower case name
+     */
+    static Map<String, File> listProcedures(final File dir) {
+        final Map<String, File> procedures = new HashMap<>();
+        final String[] names = dir == null ? null : dir.list();
+        if (names != null) {
+            for (final String name : names) {
+                final String lowerName = name.toLowerCase(Locale.ROOT);
+                if (lowerName.endsWith(DGibiGraph.PROCEDURE_SUFFIX)) {
+                    procedures.put(lowerName.substring(0, lowerName.length() - DGibiGraph.PROCEDURE_SUFFIX.length()),
+                            new File(dir, name));
+                }
+            }
+        }
+        return procedures;
+    }
+
+    private static File resolve(final File dir, final String name) {
+        final File file = new File(name.trim());
+        return file.isAbsolute() ? file : new File(dir, name.trim());
+    }
+
+    private static File canonical(final File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (final IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+}
@@ -25,12 +25,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.function.Predicate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import org.funz.util.ParserUtils;
-
 import au.com.bytecode.opencsv.CSVReader;
 
 /**
@@ -51,17 +47,24 @@ class DGibiHelper {
      */
     static final String FILE_OUTPUT_PREFIX = "#";
 
-    private static final Pattern EXCEL1_SIMPLE_PATTERN = DGibiHelper
-            .compile("\\s*@excel1\\s+(\\w+)\\s+'(\\w+)\\.csv'\\s*");
-
-    private static final Pattern EXCEL1_CHAI_PATTERN = DGibiHelper
-            .compile("\\s*@excel1\\s+(\\w+)\\s+\\(\\s*chai(?:ne)?\\s+(.+)\\)");
-
-    private static final Pattern OPTI_SORT_PATTERN = DGibiHelper.compile("\\s*opti\\s+sort\\s+'([\\w\\.]+)'\\s*;");
+    /**
+     * Placeholder used to indicate that an output is a statistic of a field written in a VTK or AVS file.<br>
+     * After the "@", the name of the file is given.
+     */
+    static final String FIELD_OUTPUT_PREFIX = "@";
 
-    private static final Pattern SORT_EXCE_PATTERN = DGibiHelper.compile("sort\\s+'*exce(?:l)?'*\\s+([\\w_]*);");
+    /**
+     * Placeholder used to indicate that an output is an object saved in a SAUV file, or an entry of a saved table.
+     * <br>
+     * After the "&amp;", the name of the file is given.
+     */
+    static final String SAUV_OUTPUT_PREFIX = "&";
 
-    private static final Pattern SORT_CHAI_PATTERN = DGibiHelper.compile("sort\\s+'*chai(?:ne)?'*\\s+([\\w_]*);");
+    /**
+     * Version of the detection of the outputs in the input files, part of the key of the {@link OutputCache}.<br>
+     * To be increased each time the outputs found for a given file may change.
+     */
+    static final int ANALYSIS_VERSION = 7;
 
     /**
      * @param path
@@ -78,38 +81,23 @@ class DGibiHelper {
      * @return the list of read lines
      */
     public static List<String> loadDgibi(final File fdgibi) {
-        final String[] rawLines = ParserUtils.getASCIIFileLines(fdgibi);
-
-        final List<String> cleanLines = new ArrayList<>(rawLines.length);
-
-        int index = 0;
-        while (index < rawLines.length) {
-            final String line = rawLines[index].trim();
-            if (!"".equals(line) && !line.startsWith("*")) {
-                // Ignore comments lines
-                if (line.endsWith(";")) {
-                    // We have a complete line, we can store it
-                    cleanLines.add(line);
-                } else if (index < (rawLines.length - 1)) {
-                    // We need to look for the end of the line
-                    final StringBuilder newLine = new StringBuilder(line);
-
-                    index++;
-                    String nextLine = rawLines[index].trim();
-                    while (!nextLine.trim().endsWith(";") && (index < (rawLines.length - 1))) {
-                        newLine.append(' ').append(nextLine);
-                        index++;
-                        nextLine = rawLines[index].trim();
-                    }
-                    newLine.append(' ').append(nextLine);
-                    cleanLines.add(newLine.toString());
-                }
-            }
-            index++;
+        final List<GibianeLexer.Statement> statements = GibianeLexer.parse(fdgibi);
+        final List<String> cleanLines = new ArrayList<>(statements.size());
+        for (final GibianeLexer.Statement statement : statements) {
+            cleanLines.add(statement.getText());
         }
         return cleanLines;
     }
 
+    /**
+     * @param lines
+     *            statements, as given by {@link #loadDgibi(File)}.
+     * @return the index of the outputs and variables of the statements
+     */
+    static DGibiIndex index(final List<String> lines) {
+        return new DGibiIndex(GibianeLexer.parse(lines));
+    }
+
     /**
      * Filter the lines with the "EXCEL1" procedure<br>
      * Currently we support the following forms:
@@ -126,37 +114,17 @@ class DGibiHelper {
      * @see "http://www-cast3m.cea.fr/index.php?page=notices&notice=%40EXCEL1"
      */
     public static Map<String, String> filterExcel1(final List<String> lines) {
-        // Filter lines starting with @EXCEL
-        final List<String> filtered = lines.stream().filter(l -> l.toLowerCase().startsWith("@excel1"))
-                .collect(Collectors.toList());
-
-        final Map<String, String> result = new HashMap<>();
-        for (final String line : filtered) {
-            // Search for the first form
-            final Matcher simpleMatcher = DGibiHelper.EXCEL1_SIMPLE_PATTERN.matcher(line);
-            if (simpleMatcher.find()) {
-                result.put(simpleMatcher.group(1), simpleMatcher.group(2) + ".csv");
-            }
-
-            // Try the second form
-            final Matcher matcher = DGibiHelper.EXCEL1_CHAI_PATTERN.matcher(line);
-            if (matcher.find()) {
-                final String variableName = matcher.group(1);
-                final String[] complexFileName = matcher.group(2).split(" ");
-                final StringBuilder filenameBuilder = new StringBuilder();
-                for (final String item : complexFileName) {
-                    if (item.startsWith("'")) {
-                        filenameBuilder.append(item.replace("'", ""));
-                    } else {
-                        // Variable
-                        filenameBuilder.append(DGibiHelper.getVariableValue(lines, item));
-                    }
-                }
+        return DGibiHelper.filterExcel1(DGibiHelper.index(lines));
+    }
 
-                result.put(variableName, filenameBuilder.toString());
-            }
-        }
-        return result;
+    /**
+     * @param index
+     *            the index of the input file.
+     * @return a map associating the VAR to the 'filename.csv'
+     * @see #filterExcel1(List)
+     */
+    static Map<String, String> filterExcel1(final DGibiIndex index) {
+        return index.getExcel1();
     }
 
     /**
@@ -167,7 +135,16 @@ class DGibiHelper {
      * @return the name of the 'EXCEL' variable associated to the name of the output CSV file
      */
     static Map<String, String> filterSortExcel(final List<String> lines) {
-        return DGibiHelper.filterOptiSort(lines, DGibiHelper.SORT_EXCE_PATTERN);
+        return DGibiHelper.filterSortExcel(DGibiHelper.index(lines));
+    }
+
+    /**
+     * @param index
+     *            the index of the input file.
+     * @return the name of the 'EXCEL' variable associated to the name of the output CSV file
+     */
+    static Map<String, String> filterSortExcel(final DGibiIndex index) {
+        return index.getSortExcel();
     }
 
     /**
@@ -177,35 +154,66 @@ class DGibiHelper {
      * @return the name of the 'CHAI' variable associated to the name of the output file
      */
     static Map<String, String> filterSortChai(final List<String> lines) {
-        return DGibiHelper.filterOptiSort(lines, DGibiHelper.SORT_CHAI_PATTERN);
+        return DGibiHelper.filterSortChai(DGibiHelper.index(lines));
     }
 
-    private static Map<String, String> filterOptiSort(final List<String> lines, final Pattern sortPattern) {
+    /**
+     * @param index
+     *            the index of the input file.
+     * @return the name of the 'CHAI' variable associated to the name of the output file
+     */
+    static Map<String, String> filterSortChai(final DGibiIndex index) {
+        return index.getSortChai();
+    }
 
-        // Filter lines starting with OPTI
-        final List<String> filtered = lines.stream().filter(l -> l.toLowerCase().startsWith("opti"))
-                .collect(Collectors.toList());
+    /**
+     * Filter lines to extract the fields saved in VTK or AVS files: {@code SORT 'VTK'} or {@code SORT 'AVS'} after
+     * {@code OPTI SORT '${filename}'}
+     *
+     * @param lines
+     *            the lines of the input file.
+     * @return the name of the field associated to the name of the output file
+     */
+    static Map<String, String> filterSortFields(final List<String> lines) {
+        return DGibiHelper.filterSortFields(DGibiHelper.index(lines));
+    }
 
-        final Map<String, String> results = new HashMap<>();
-        for (int i = 0; i < filtered.size(); i++) {
-            final String line = filtered.get(i);
-            final int nextIndex = lines.indexOf(line) + 1;
-
-            // look for
-            final Matcher optiMatcher = DGibiHelper.OPTI_SORT_PATTERN.matcher(line.toLowerCase());
-            // this file is interesting! look the next line
-            if (optiMatcher.find() && (nextIndex < lines.size())) {
-                final String filename = optiMatcher.group(1);
-                final String nextLine = lines.get(nextIndex);
-                final Matcher sortMatcher = sortPattern.matcher(nextLine);
-                if (sortMatcher.find()) {
-                    final String excelVariable = sortMatcher.group(1);
-                    results.put(excelVariable, filename);
-                }
-            }
-        }
+    /**
+     * @param index
+     *            the index of the input file.
+     * @return the name of the field associated to the name of the output file
+     */
+    static Map<String, String> filterSortFields(final DGibiIndex index) {
+        return index.getSortFields();
+    }
 
-        return results;
+    /**
+     * Filter lines to extract the objects saved with {@code SAUV} after {@code OPTI SAUV '${filename}'}
+     *
+     * @param lines
+     *            the lines of the input file.
+     * @return the name of the object associated to the name of the SAUV file
+     */
+    static Map<String, String> filterSauv(final List<String> lines) {
+        return DGibiHelper.filterSauv(DGibiHelper.index(lines));
+    }
+
+    /**
+     * @param index
+     *            the index of the input file.
+     * @return the name of the object associated to the name of the SAUV file
+     */
+    static Map<String, String> filterSauv(final DGibiIndex index) {
+        return index.getSauvObjects();
+    }
+
+    /**
+     * @param index
+     *            the index of the input file.
+     * @return the name of the object saved in a binary SAUV file (without FORM) associated to the name of the file
+     */
+    static Map<String, String> filterBinarySauv(final DGibiIndex index) {
+        return index.getBinarySauvObjects();
     }
 
     /**
@@ -218,26 +226,19 @@ class DGibiHelper {
      * @return the columns variables
      */
     public static List<String> filterTable(final List<String> lines, final String variable) {
-        final List<String> filtered = lines.stream().filter(l -> l.toLowerCase().startsWith(variable.toLowerCase()))
-                .collect(Collectors.toList());
-
-        final Pattern pattern = DGibiHelper.compile(variable + "\\s*=\\s*table\\s*;");
-        final Pattern pattern2 = DGibiHelper.compile(variable + "\\s+\\.\\s+'([\\w_]*)\\s*'\\s*=");
-
-        final ArrayList<String> res = new ArrayList<>();
-        for (final String line : filtered) {
-            final Matcher matcher = pattern.matcher(line);
-            if (matcher.find()) {
-                // search in the following lines
-                for (final String fline : filtered) {
-                    final Matcher matcher2 = pattern2.matcher(fline);
-                    if (matcher2.find()) {
-                        res.add(matcher2.group(1));
-                    }
-                }
-            }
-        }
-        return res;
+        return DGibiHelper.filterTable(DGibiHelper.index(lines), variable);
+    }
+
+    /**
+     * @param index
+     *            the index of the file
+     * @param variable
+     *            the variable to filter
+     * @return the columns variables
+     * @see #filterTable(List, String)
+     */
+    static List<String> filterTable(final DGibiIndex index, final String variable) {
+        return index.getTableKeys(variable);
     }
 
     /**
@@ -250,11 +251,19 @@ class DGibiHelper {
      * @return the columns variables
      */
     public static List<String> filterEvolManu(final List<String> lines, final String variable) {
-        final List<String> filtered = lines.stream().filter(l -> l.toLowerCase().startsWith(variable.toLowerCase()))
-                .collect(Collectors.toList());
-        final Pattern pattern = DGibiHelper
-                .compile(variable + "\\s*=\\s*evol\\s+manu\\s+'(.*)'\\s+[^']+\\s+'(.*)'\\s+[^']+\\s*;");
-        return DGibiHelper.filterOneLiner(filtered, pattern);
+        return DGibiHelper.filterEvolManu(DGibiHelper.index(lines), variable);
+    }
+
+    /**
+     * @param index
+     *            the index of the file
+     * @param variable
+     *            the variable to filter
+     * @return the columns variables
+     * @see #filterEvolManu(List, String)
+     */
+    static List<String> filterEvolManu(final DGibiIndex index, final String variable) {
+        return index.getEvolManuColumns(variable);
     }
 
     /**
@@ -267,48 +276,38 @@ class DGibiHelper {
      * @return the columns variables
      */
     public static List<String> filterExtr(final List<String> lines, final String variable) {
-        final List<String> filtered = lines.stream().filter(l -> l.toLowerCase().startsWith(variable.toLowerCase()))
-                .collect(Collectors.toList());
-        final Pattern pattern = DGibiHelper.compile(variable + "\\s*=\\s*extr\\s+[^']+\\s+'(.*)'\\s*;");
-        final List<String> extractedVars = DGibiHelper.filterOneLiner(filtered, pattern);
-        if (extractedVars.size() == 1) {
+        return DGibiHelper.filterExtr(DGibiHelper.index(lines), variable);
+    }
+
+    /**
+     * @param index
+     *            the index of the file
+     * @param variable
+     *            the variable to filter
+     * @return the columns variables
+     * @see #filterExtr(List, String)
+     */
+    static List<String> filterExtr(final DGibiIndex index, final String variable) {
+        final List<String> extractedVars = new ArrayList<>();
+        if (index.getExtrColumn(variable) != null) {
             // We have found the unique column. An extraction does not necessarily have a name, so we put the name of
             // the variable
-            extractedVars.clear();
             extractedVars.add(variable);
         }
         return extractedVars;
     }
 
-    private static List<String> filterOneLiner(final List<String> lines, final Pattern pattern) {
-        final List<String> res = new ArrayList<>();
-        for (int i = 0; (i < lines.size()) && res.isEmpty(); i++) {
-            final String line = lines.get(i);
-            // PB performance // PB text on several lines
-            final Matcher matcher = pattern.matcher(line);
-            if (matcher.find()) {
-                for (int groupIndex = 1; groupIndex <= matcher.groupCount(); groupIndex++) {
-                    res.add(matcher.group(groupIndex));
-                }
-            }
-        }
-        return res;
+    public static List<String> filterMess(final List<String> lines) {
+        return DGibiHelper.filterMess(DGibiHelper.index(lines));
     }
 
-    public static List<String> filterMess(final List<String> lines) {
-        final List<String> filtered = lines.stream().filter(l -> l.toLowerCase().startsWith("mess"))
-                .collect(Collectors.toList());
-
-        final Pattern pattern = DGibiHelper.compile("mess[ ]+'([\\w_]+)[ ]*=[ ]*'");
-        final List<String> res = new ArrayList<>();
-        for (final String line : filtered) {
-            // look for
-            final Matcher matcher = pattern.matcher(line);
-            if (matcher.find()) {
-                res.add(matcher.group(1));
-            }
-        }
-        return res;
+    /**
+     * @param index
+     *            the index of the file
+     * @return the variables printed with {@code MESS 'var=' var;}
+     */
+    static List<String> filterMess(final DGibiIndex index) {
+        return index.getMessVariables();
     }
 
     public static File[] filterFiles(final String suffix, final File... inputfiles) {
@@ -355,6 +354,24 @@ class DGibiHelper {
         return DGibiHelper.extractVariables(outputs, DGibiHelper.FILE_OUTPUT_PREFIX, v -> !v.endsWith(".csv"));
     }
 
+    /**
+     * @param outputs
+     *            the raw output map
+     * @return the name and the filename of the statistics of the fields written in VTK or AVS files
+     */
+    static Map<String, String> extractFieldVariables(final Map<String, Object> outputs) {
+        return DGibiHelper.extractVariables(outputs, DGibiHelper.FIELD_OUTPUT_PREFIX, v -> true);
+    }
+
+    /**
+     * @param outputs
+     *            the raw output map
+     * @return the name and the filename of the objects saved in SAUV files
+     */
+    static Map<String, String> extractSauvVariables(final Map<String, Object> outputs) {
+        return DGibiHelper.extractVariables(outputs, DGibiHelper.SAUV_OUTPUT_PREFIX, v -> true);
+    }
+
     private static Map<String, String> extractVariables(final Map<String, Object> outputs, final String prefix,
             final Predicate<String> additionalTest) {
         final Map<String, String> results = new HashMap<>();
@@ -371,6 +388,12 @@ class DGibiHelper {
         return results;
     }
 
+    /**
+     * @param f
+     *            the CSV file.
+     * @return the trimmed cells of each non empty column, header included
+     * @see CsvColumns#read(File) for a conversion of the values in one pass
+     */
     public static List<String[]> readCSV(final File f) {
         List<String[]> result;
 
@@ -412,46 +435,17 @@ class DGibiHelper {
     }
 
     public static Double lookForScalar(final String[] lines, final String var) {
-        final Pattern pattern = DGibiHelper.compile("" + var + "=\\s*([\\d\\.\\+\\-E]+)[ ]*");
-
+        final ListingScanner scanner = new ListingScanner(Collections.singletonList(var));
+        final Map<String, Double> values = new HashMap<>();
         for (final String line : lines) {
-            // remove $
-            if (line.startsWith("$")) {
-                continue;
-            }
-            final String[] parts = line.split(";");
-            final String code = parts[0];
-
-            // look for
-            final Matcher matcher = pattern.matcher(code);
-            if (matcher.find()) {
-                try {
-                    final String value = matcher.group(1);
-                    return Double.parseDouble(value);
-                } catch (final Exception e) {
-                }
+            scanner.accept(line, values);
+            if (!values.isEmpty()) {
+                return values.get(var);
             }
         }
         return null;
     }
 
-    /**
-     * Look for a variable value
-     */
-    private static String getVariableValue(final List<String> lines, final String item) {
-        for (final String line : lines) {
-            final String cleanLine = line;
-            if (cleanLine.startsWith(item)) {
-                return cleanLine.split("=")[1].trim().replace(";", "").trim();
-            }
-        }
-        return null;
-    }
-
-    private static Pattern compile(final String regexp) {
-        return Pattern.compile("(?iu)" + regexp);
-    }
-
     private DGibiHelper() {
         // Suppress default constructor for noninstantiability.
         throw new AssertionError();
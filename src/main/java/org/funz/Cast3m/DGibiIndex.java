@@ -0,0 +1,442 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.funz.Cast3m.GibianeLexer.Statement;
+
+/**
+ * Outputs and symbols of a dgibi file, found in one pass over its tokens.<br>
+ * The statements looked for are:
+ * <ul>
+ * <li>{@code MESS 'var=' var;}</li>
+ * <li>{@code OPTI SORT 'file';} followed by {@code SORT 'EXCE' var;} or {@code SORT 'CHAI' var;}</li>
+ * <li>{@code OPTI SORT 'file';} followed by {@code SORT 'VTK' mesh field 'NAME' ...;} or
+ * {@code SORT 'AVS' mesh field;}</li>
+ * <li>{@code OPTI SAUV 'file';} followed by {@code SAUV var ...;}</li>
+ * <li>{@code @EXCEL1 var 'file.csv';} and {@code @EXCEL1 var (CHAI ...);}</li>
+ * <li>{@code var = TABLE;} and {@code var . 'KEY' = ...;}</li>
+ * <li>{@code var = EVOL MANU 'X' ... 'Y' ...;} and {@code var = EXTR ... 'Y';}</li>
+ * <li>{@code var = 'text';}, to resolve the names of the files</li>
+ * </ul>
+ * The definitions of the variables are kept by lower case name, as Gibiane is case insensitive.
+ */
+class DGibiIndex {
+
+    /**
+     * Definitions of a variable.
+     */
+    private static final class Symbol {
+
+        private boolean table;
+
+        private final Set<String> tableKeys = new LinkedHashSet<>();
+
+        private List<String> evolManuColumns;
+
+        private String extrColumn;
+
+        private String value;
+    }
+
+    /**
+     * {@code @EXCEL1 var (CHAI ...)} items, resolved once all the variables are known.
+     */
+    private static final class Excel1Chai {
+
+        private final String variable;
+
+        private final List<String> items = new ArrayList<>();
+
+        private final List<Boolean> isVariable = new ArrayList<>();
+
+        private Excel1Chai(final String variable) {
+            this.variable = variable;
+        }
+    }
+
+    private final List<String> messVariables = new ArrayList<>();
+
+    private final Map<String, String> sortExcel = new LinkedHashMap<>();
+
+    private final Map<String, String> sortChai = new LinkedHashMap<>();
+
+    private final Map<String, String> excel1 = new LinkedHashMap<>();
+
+    private final Map<String, String> sortFields = new LinkedHashMap<>();
+
+    private final Map<String, String> sauvObjects = new LinkedHashMap<>();
+
+    /** Objects saved in a binary SAUV file, which cannot be read */
+    private final Map<String, String> binarySauvObjects = new LinkedHashMap<>();
+
+    private final Map<String, Symbol> symbols = new HashMap<>();
+
+    /** Files written by OPTI SORT, OPTI SAUV and @EXCEL1 */
+    private final Set<String> outputFiles = new LinkedHashSet<>();
+
+    /** Output file of the last OPTI SORT, null for the listing */
+    private String sortFile;
+
+    /** Output file of the last OPTI SAUV */
+    private String sauvFile;
+
+    /** True if the last OPTI SAUV is formatted (FORM) */
+    private boolean sauvFormatted;
+
+    /**
+     * @param statements
+     *            the statements of the file.
+     */
+    DGibiIndex(final List<Statement> statements) {
+        final List<Excel1Chai> excel1Chai = new ArrayList<>();
+        for (final Statement statement : statements) {
+            if (statement.size() == 0) {
+                continue;
+            }
+            if (statement.isOperator(1, "=") && (statement.getType(0) == GibianeLexer.WORD)) {
+                this.assignment(statement);
+            } else if (statement.isOperator(1, ".") && statement.isOperator(3, "=")
+                    && (statement.getType(0) == GibianeLexer.WORD) && (statement.getType(2) == GibianeLexer.STRING)) {
+                // var . 'KEY' = ...
+                this.symbol(statement.getToken(0)).tableKeys.add(statement.getToken(2).trim());
+            } else if (statement.isKeyword(0, "mess")) {
+                this.mess(statement);
+            } else if (statement.isKeyword(0, "option")) {
+                this.opti(statement);
+            } else if (statement.isKeyword(0, "sortir")) {
+                this.sort(statement);
+            } else if (statement.isKeyword(0, "sauver")) {
+                this.sauv(statement);
+            } else if (statement.isWord(0, "@excel1")) {
+                final Excel1Chai chai = this.excel1(statement);
+                if (chai != null) {
+                    excel1Chai.add(chai);
+                }
+            }
+        }
+
+        for (final Excel1Chai chai : excel1Chai) {
+            final StringBuilder filename = new StringBuilder();
+            for (int i = 0; i < chai.items.size(); i++) {
+                final String item = chai.items.get(i);
+                final String value = chai.isVariable.get(i) ? this.getValue(item) : item;
+                filename.append(value == null ? item : value);
+            }
+            this.excel1.put(chai.variable, filename.toString());
+        }
+        this.outputFiles.addAll(this.excel1.values());
+    }
+
+    private Symbol symbol(final String name) {
+        return this.symbols.computeIfAbsent(name.toLowerCase(Locale.ROOT), n -> new Symbol());
+    }
+
+    /**
+     * var = ...
+     */
+    private void assignment(final Statement statement) {
+        final Symbol symbol = this.symbol(statement.getToken(0));
+        if (statement.isKeyword(2, "table")) {
+            symbol.table = true;
+        } else if (statement.isKeyword(2, "evol") && statement.isKeyword(3, "manu")) {
+            // two strings, each one followed by its values
+            final List<String> columns = new ArrayList<>();
+            boolean valuesFollow = false;
+            final int first = (statement.size() > 4) && (statement.getType(4) == GibianeLexer.STRING) ? 4
+                    : statement.size();
+            for (int i = first; i < statement.size(); i++) {
+                if (statement.getType(i) == GibianeLexer.STRING) {
+                    columns.add(statement.getToken(i));
+                    if (!valuesFollow && (i > 4)) {
+                        // no values between the two names
+                        columns.clear();
+                        break;
+                    }
+                    valuesFollow = false;
+                } else {
+                    valuesFollow = true;
+                }
+            }
+            if ((symbol.evolManuColumns == null) && (columns.size() == 2) && valuesFollow) {
+                symbol.evolManuColumns = columns;
+            }
+        } else if (statement.isKeyword(2, "extr")) {
+            // one string, last token, after the extracted object
+            final int last = statement.size() - 1;
+            int strings = 0;
+            for (int i = 3; i < statement.size(); i++) {
+                if (statement.getType(i) == GibianeLexer.STRING) {
+                    strings++;
+                }
+            }
+            if ((symbol.extrColumn == null) && (strings == 1) && (last > 3)
+                    && (statement.getType(last) == GibianeLexer.STRING)) {
+                symbol.extrColumn = statement.getToken(last);
+            }
+        }
+
+        if ((symbol.value == null) && (statement.size() == 3)) {
+            symbol.value = statement.getToken(2);
+        }
+    }
+
+    /**
+     * MESS 'var=' var ...
+     */
+    private void mess(final Statement statement) {
+        for (int i = 1; i < statement.size(); i++) {
+            if (statement.getType(i) == GibianeLexer.STRING) {
+                final String name = DGibiIndex.messName(statement.getToken(i));
+                if (name != null) {
+                    this.messVariables.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name in a {@code 'name='} string, or null
+     */
+    private static String messName(final String text) {
+        int end = 0;
+        while ((end < text.length())
+                && (Character.isLetterOrDigit(text.charAt(end)) || (text.charAt(end) == '_'))) {
+            end++;
+        }
+        if ((end == 0) || !text.substring(end).trim().equals("=")) {
+            return null;
+        }
+        return text.substring(0, end);
+    }
+
+    /**
+     * OPTI SORT 'file'; changes the output file, OPTI SORT; goes back to the listing
+     */
+    private void opti(final Statement statement) {
+        if (statement.isKeyword(1, "sauver")) {
+            // OPTI SAUV ('FORM') 'file';
+            final int last = statement.size() - 1;
+            if ((last >= 2) && (statement.getType(last) == GibianeLexer.STRING)) {
+                this.sauvFile = statement.getToken(last).trim().toLowerCase(Locale.ROOT);
+                this.outputFiles.add(this.sauvFile);
+                this.sauvFormatted = statement.isKeyword(2, "format") && (last > 2);
+            }
+            return;
+        }
+        if (!statement.isKeyword(1, "sortir")) {
+            return;
+        }
+        if (statement.size() == 2) {
+            this.sortFile = null;
+        } else if ((statement.size() == 3) && (statement.getType(2) == GibianeLexer.STRING)) {
+            this.sortFile = statement.getToken(2).trim().toLowerCase(Locale.ROOT);
+            this.outputFiles.add(this.sortFile);
+        }
+    }
+
+    /**
+     * SORT 'EXCE' var; or SORT 'CHAI' var;
+     */
+    private void sort(final Statement statement) {
+        if ((this.sortFile != null) && (statement.isKeyword(1, "vtk") || statement.isKeyword(1, "avs"))) {
+            this.sortFields(statement);
+            return;
+        }
+        if ((this.sortFile == null) || (statement.size() != 3) || (statement.getType(2) != GibianeLexer.WORD)) {
+            return;
+        }
+        if (statement.isKeyword(1, "excel")) {
+            this.sortExcel.put(statement.getToken(2), this.sortFile);
+        } else if (statement.isKeyword(1, "chaine")) {
+            this.sortChai.put(statement.getToken(2), this.sortFile);
+        }
+    }
+
+    /**
+     * SAUV ('FORM') var1 var2 ...; saves the objects listed, the ones which can be outputs, in the OPTI SAUV file,
+     * formatted if FORM is given here or by OPTI SAUV
+     */
+    private void sauv(final Statement statement) {
+        if (this.sauvFile == null) {
+            return;
+        }
+        boolean formatted = this.sauvFormatted;
+        for (int i = 1; i < statement.size(); i++) {
+            formatted |= statement.isKeyword(i, "format");
+        }
+        for (int i = 1; i < statement.size(); i++) {
+            if ((statement.getType(i) == GibianeLexer.WORD) && !statement.isKeyword(i, "format")) {
+                (formatted ? this.sauvObjects : this.binarySauvObjects).put(statement.getToken(i), this.sauvFile);
+            }
+        }
+    }
+
+    /**
+     * SORT 'VTK' mesh ('NAME') field1 'NAME1' ... ('TEMPS' time); names the fields in the file, SORT 'AVS' mesh field;
+     * leaves it to Cast3m, the field being then named after its variable
+     */
+    private void sortFields(final Statement statement) {
+        final List<String> objects = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        for (int i = 2; i < statement.size(); i++) {
+            if (statement.isKeyword(i, "temps")) {
+                // and its value
+                i++;
+            } else if (statement.getType(i) == GibianeLexer.WORD) {
+                objects.add(statement.getToken(i));
+                names.add(null);
+            } else if ((statement.getType(i) == GibianeLexer.STRING) && !objects.isEmpty()
+                    && (names.get(names.size() - 1) == null)) {
+                names.set(names.size() - 1, statement.getToken(i).trim());
+            }
+        }
+        if (statement.isKeyword(1, "vtk")) {
+            // the first object is the mesh
+            for (int i = 1; i < objects.size(); i++) {
+                if (names.get(i) != null) {
+                    this.sortFields.put(names.get(i), this.sortFile);
+                }
+            }
+        } else if (objects.size() == 2) {
+            this.sortFields.put(objects.get(1), this.sortFile);
+        }
+    }
+
+    /**
+     * {@code @EXCEL1 var 'file.csv';} is stored, {@code @EXCEL1 var (CHAI ...);} is returned to be resolved later
+     */
+    private Excel1Chai excel1(final Statement statement) {
+        if ((statement.size() < 3) || (statement.getType(1) != GibianeLexer.WORD)) {
+            return null;
+        }
+        final String variable = statement.getToken(1);
+        if (statement.getType(2) == GibianeLexer.STRING) {
+            final String file = statement.getToken(2).trim();
+            if (file.toLowerCase(Locale.ROOT).endsWith(".csv") && (file.length() > 4)) {
+                this.excel1.put(variable, file.substring(0, file.length() - 4) + ".csv");
+            }
+            return null;
+        }
+        if (statement.isOperator(2, "(") && statement.isKeyword(3, "chaine")) {
+            final Excel1Chai chai = new Excel1Chai(variable);
+            for (int i = 4; (i < statement.size()) && !statement.isOperator(i, ")"); i++) {
+                chai.items.add(statement.getToken(i));
+                chai.isVariable.add(statement.getType(i) == GibianeLexer.WORD);
+            }
+            return chai;
+        }
+        return null;
+    }
+
+    /**
+     * @return the names of the files written by {@code OPTI SORT}, {@code OPTI SAUV} and {@code @EXCEL1}, as read by
+     *         {@link Cast3mIOPlugin#readOutput(java.io.File)}
+     */
+    Set<String> getOutputFiles() {
+        return this.outputFiles;
+    }
+
+    /**
+     * @return the variables printed with {@code MESS 'var=' var;}
+     */
+    List<String> getMessVariables() {
+        return this.messVariables;
+    }
+
+    /**
+     * @return the variables written with {@code SORT 'EXCE'}, associated to their file
+     */
+    Map<String, String> getSortExcel() {
+        return this.sortExcel;
+    }
+
+    /**
+     * @return the variables written with {@code SORT 'CHAI'}, associated to their file
+     */
+    Map<String, String> getSortChai() {
+        return this.sortChai;
+    }
+
+    /**
+     * @return the variables written with {@code @EXCEL1}, associated to their file
+     */
+    Map<String, String> getExcel1() {
+        return this.excel1;
+    }
+
+    /**
+     * @return the fields written with {@code SORT 'VTK'} or {@code SORT 'AVS'}, associated to their file
+     */
+    Map<String, String> getSortFields() {
+        return this.sortFields;
+    }
+
+    /**
+     * @return the objects saved with {@code SAUV}, associated to their file
+     */
+    Map<String, String> getSauvObjects() {
+        return this.sauvObjects;
+    }
+
+    /**
+     * @return the objects saved with {@code SAUV} in a binary file (without {@code FORM}), associated to their file
+     */
+    Map<String, String> getBinarySauvObjects() {
+        return this.binarySauvObjects;
+    }
+
+    /**
+     * @return the keys of the table, or an empty list if the variable is not a table
+     */
+    List<String> getTableKeys(final String variable) {
+        final Symbol symbol = this.symbols.get(variable.toLowerCase(Locale.ROOT));
+        if ((symbol == null) || !symbol.table) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(symbol.tableKeys);
+    }
+
+    /**
+     * @return the names of the two columns of an {@code EVOL MANU}, or an empty list
+     */
+    List<String> getEvolManuColumns(final String variable) {
+        final Symbol symbol = this.symbols.get(variable.toLowerCase(Locale.ROOT));
+        if ((symbol == null) || (symbol.evolManuColumns == null)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(symbol.evolManuColumns);
+    }
+
+    /**
+     * @return the name of the component extracted by {@code EXTR}, or null
+     */
+    String getExtrColumn(final String variable) {
+        final Symbol symbol = this.symbols.get(variable.toLowerCase(Locale.ROOT));
+        return symbol == null ? null : symbol.extrColumn;
+    }
+
+    /**
+     * @return the value of a variable assigned with a single token (string content, number or name), or null
+     */
+    String getValue(final String variable) {
+        final Symbol symbol = this.symbols.get(variable.toLowerCase(Locale.ROOT));
+        return symbol == null ? null : symbol.value;
+    }
+}
@@ -0,0 +1,594 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Statistics of the fields of a file written by {@code SORT 'VTK'} or {@code SORT 'AVS'}, computed in one sequential
+ * pass and in constant memory: the mesh is skipped, and each value only updates the {@link Reduction} of its field.
+ * The formats read are the legacy ASCII VTK files, the XML VTK files with ascii arrays and the ASCII AVS UCD files.
+ * <br>
+ * A field with several components is reduced through the norm of its values. A cell field named as a point field is
+ * suffixed with {@code _cell}. The node data of an AVS file is also reduced as a whole under {@link #NODE_DATA}, the
+ * names of its components being chosen by Cast3m.
+ */
+final class FieldReducer {
+
+    /** Name of the reduction of all the node data of an AVS file */
+    static final String NODE_DATA = "";
+
+    /** Statistics of a field, suffixes of the outputs after a '_' */
+    static final List<String> STATISTICS = Arrays.asList("min", "max", "mean", "l2", "argmax");
+
+    /** Extensions tried after the name given to {@code OPTI SORT} */
+    private static final List<String> EXTENSIONS = Arrays.asList(".vtk", ".vtu", ".avs", ".inp");
+
+    private FieldReducer() {
+        // Suppress default constructor for noninstantiability.
+        throw new AssertionError();
+    }
+
+    /**
+     * Statistics of the values of a field.
+     */
+    static final class Reduction {
+
+        private long count;
+
+        private double min = Double.POSITIVE_INFINITY;
+
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private double sum;
+
+        private double sumOfSquares;
+
+        private long argmax = -1;
+
+        /**
+         * @param value
+         *            a value of the field, ignored if NaN.
+         * @param location
+         *            the point or the cell of the value.
+         */
+        void add(final double value, final long location) {
+            if (Double.isNaN(value)) {
+                return;
+            }
+            this.count++;
+            this.sum += value;
+            this.sumOfSquares += value * value;
+            if (value < this.min) {
+                this.min = value;
+            }
+            if (value > this.max) {
+                this.max = value;
+                this.argmax = location;
+            }
+        }
+
+        /**
+         * @param statistic
+         *            one of the {@link FieldReducer#STATISTICS}.
+         * @return the value of the statistic, NaN if the field has no value: the L2 norm is the one of the values,
+         *         not weighted by the mesh, and the location of the maximum is the label of the node or cell in an AVS
+         *         file, its index (from 0) in a VTK file
+         */
+        double get(final String statistic) {
+            if (this.count == 0) {
+                return Double.NaN;
+            }
+            switch (statistic) {
+            case "min":
+                return this.min;
+            case "max":
+                return this.max;
+            case "mean":
+                return this.sum / this.count;
+            case "l2":
+                return Math.sqrt(this.sumOfSquares);
+            case "argmax":
+                return this.argmax;
+            default:
+                return Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * @param file
+     *            the file given to {@code OPTI SORT}.
+     * @return the file, or the first existing one with a field extension, or null
+     */
+    static File resolve(final File file) {
+        if (file.isFile()) {
+            return file;
+        }
+        for (final String extension : FieldReducer.EXTENSIONS) {
+            final File candidate = new File(file.getPath() + extension);
+            if (candidate.isFile()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param output
+     *            the name of an output, a field name followed by a statistic.
+     * @return the index of the '_' before the statistic, or -1 if the output is not a statistic
+     */
+    static int statisticIndex(final String output) {
+        final int index = output.lastIndexOf('_');
+        return (index >= 0) && FieldReducer.STATISTICS.contains(output.substring(index + 1)) ? index : -1;
+    }
+
+    /**
+     * @param file
+     *            a VTK or AVS file.
+     * @return the reductions of its fields by name, the ones read before an error if it cannot be read to the end
+     */
+    static Map<String, Reduction> read(final File file) {
+        final Map<String, Reduction> reductions = new LinkedHashMap<>();
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024)) {
+            in.mark(64);
+            final byte[] start = new byte[64];
+            final int read = Math.max(in.read(start), 0);
+            in.reset();
+            final String head = new String(start, 0, read, StandardCharsets.ISO_8859_1).trim();
+            if (head.startsWith("<")) {
+                FieldReducer.readXml(in, reductions);
+            } else {
+                final Tokens tokens = new Tokens(new InputStreamReader(in, StandardCharsets.ISO_8859_1));
+                if (head.toLowerCase(Locale.ROOT).startsWith("# vtk")) {
+                    FieldReducer.readLegacy(tokens, reductions);
+                } else {
+                    FieldReducer.readAvs(tokens, reductions);
+                }
+            }
+        } catch (final IOException | XMLStreamException | RuntimeException e) {
+            System.err.println("Unable to read the fields of " + file + ": " + e);
+        }
+        return reductions;
+    }
+
+    /**
+     * @return the reduction of a new field, suffixed with {@code _cell} for a cell field named as a point field
+     */
+    private static Reduction newField(final Map<String, Reduction> reductions, final String name,
+            final boolean cells) {
+        final String key = cells && reductions.containsKey(name) ? name + "_cell" : name;
+        final Reduction reduction = new Reduction();
+        reductions.put(key, reduction);
+        return reduction;
+    }
+
+    /**
+     * Legacy VTK file: a header line, a title line, ASCII, then sections starting with a keyword.
+     */
+    private static void readLegacy(final Tokens tokens, final Map<String, Reduction> reductions)
+            throws IOException {
+        tokens.line();
+        tokens.line();
+        if (!tokens.next() || !tokens.is("ascii")) {
+            throw new IOException("only ASCII VTK files can be reduced");
+        }
+        boolean cells = false;
+        long count = 0;
+        while (tokens.next()) {
+            if (tokens.is("points")) {
+                final long points = tokens.nextLong();
+                tokens.nextText();
+                tokens.skip(3 * points);
+            } else if (tokens.is("cells") || tokens.is("polygons") || tokens.is("lines") || tokens.is("vertices")
+                    || tokens.is("triangle_strips")) {
+                final long offsets = tokens.nextLong();
+                final long size = tokens.nextLong();
+                if (tokens.next() && tokens.is("offsets")) {
+                    // version 5: OFFSETS type, values, CONNECTIVITY type, values
+                    tokens.nextText();
+                    tokens.skip(offsets);
+                    tokens.nextText();
+                    tokens.nextText();
+                } else {
+                    tokens.pushBack();
+                }
+                tokens.skip(size);
+            } else if (tokens.is("cell_types")) {
+                tokens.skip(tokens.nextLong());
+            } else if (tokens.is("point_data") || tokens.is("cell_data")) {
+                cells = tokens.is("cell_data");
+                count = tokens.nextLong();
+            } else if (tokens.is("scalars")) {
+                final Tuples tuples = new Tuples(FieldReducer.newField(reductions, tokens.nextText(), cells));
+                tokens.nextText();
+                int components = 1;
+                if (tokens.next() && !tokens.is("lookup_table")) {
+                    components = (int) tokens.value();
+                    tokens.next();
+                }
+                tokens.nextText();
+                tuples.read(tokens, count, components);
+            } else if (tokens.is("vectors") || tokens.is("normals") || tokens.is("tensors")) {
+                final int components = tokens.is("tensors") ? 9 : 3;
+                final Tuples tuples = new Tuples(FieldReducer.newField(reductions, tokens.nextText(), cells));
+                tokens.nextText();
+                tuples.read(tokens, count, components);
+            } else if (tokens.is("texture_coordinates") || tokens.is("color_scalars")) {
+                final boolean typed = tokens.is("texture_coordinates");
+                final Tuples tuples = new Tuples(FieldReducer.newField(reductions, tokens.nextText(), cells));
+                final int components = (int) tokens.nextLong();
+                if (typed) {
+                    tokens.nextText();
+                }
+                tuples.read(tokens, count, components);
+            } else if (tokens.is("lookup_table")) {
+                tokens.nextText();
+                tokens.skip(4 * tokens.nextLong());
+            } else if (tokens.is("field")) {
+                tokens.nextText();
+                final long arrays = tokens.nextLong();
+                for (long i = 0; i < arrays; i++) {
+                    final Tuples tuples = new Tuples(FieldReducer.newField(reductions, tokens.nextText(), cells));
+                    final int components = (int) tokens.nextLong();
+                    final long size = tokens.nextLong();
+                    tokens.nextText();
+                    tuples.read(tokens, size, components);
+                }
+            }
+            // the other tokens (dataset, dimensions, metadata) are skipped
+        }
+    }
+
+    /**
+     * XML VTK file: the ascii {@code DataArray} of the {@code PointData} and {@code CellData} elements.
+     */
+    private static void readXml(final InputStream in, final Map<String, Reduction> reductions)
+            throws XMLStreamException {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        final XMLStreamReader xml = factory.createXMLStreamReader(in);
+        try {
+            Boolean cells = null;
+            Tuples tuples = null;
+            while (xml.hasNext()) {
+                final int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    final String element = xml.getLocalName();
+                    if ("PointData".equals(element) || "CellData".equals(element)) {
+                        cells = "CellData".equals(element);
+                    } else if ("DataArray".equals(element) && (cells != null)) {
+                        final String name = xml.getAttributeValue(null, "Name");
+                        final String components = xml.getAttributeValue(null, "NumberOfComponents");
+                        if ("ascii".equals(xml.getAttributeValue(null, "format"))) {
+                            tuples = new Tuples(FieldReducer.newField(reductions, name, cells));
+                            tuples.components = components == null ? 1 : Integer.parseInt(components.trim());
+                        } else {
+                            System.err.println("Only ascii VTK arrays can be reduced: " + name);
+                        }
+                    }
+                } else if (((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.SPACE))
+                        && (tuples != null)) {
+                    tuples.accept(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    final String element = xml.getLocalName();
+                    if ("PointData".equals(element) || "CellData".equals(element)) {
+                        cells = null;
+                    } else if ("DataArray".equals(element) && (tuples != null)) {
+                        tuples.endOfNumber();
+                        tuples = null;
+                    }
+                }
+            }
+        } finally {
+            xml.close();
+        }
+    }
+
+    /**
+     * AVS UCD file: the counts, the nodes and cells (skipped), then the node data and the cell data, each one being
+     * described by the sizes of its components and their labels, then given one line per node or cell.
+     */
+    private static void readAvs(final Tokens tokens, final Map<String, Reduction> reductions)
+            throws IOException {
+        while (tokens.next() && tokens.startsWith('#')) {
+            tokens.skipLine();
+        }
+        tokens.pushBack();
+        final long nodes = tokens.nextLong();
+        final long cells = tokens.nextLong();
+        final long nodeData = tokens.nextLong();
+        final long cellData = tokens.nextLong();
+        tokens.skipLine();
+        tokens.skipLines(nodes + cells);
+        if (nodeData > 0) {
+            FieldReducer.readAvsData(tokens, reductions, nodes, false);
+        }
+        if (cellData > 0) {
+            FieldReducer.readAvsData(tokens, reductions, cells, true);
+        }
+    }
+
+    private static void readAvsData(final Tokens tokens, final Map<String, Reduction> reductions, final long rows,
+            final boolean cells) throws IOException {
+        final int[] sizes = new int[(int) tokens.nextLong()];
+        int total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = (int) tokens.nextLong();
+            total += sizes[i];
+        }
+        tokens.skipLine();
+        final Reduction[] fields = new Reduction[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            // label, unit
+            final String label = tokens.line();
+            final int comma = label.indexOf(',');
+            fields[i] = FieldReducer.newField(reductions, (comma < 0 ? label : label.substring(0, comma)).trim(),
+                    cells);
+        }
+        final Reduction all = cells ? null : FieldReducer.newField(reductions, FieldReducer.NODE_DATA, false);
+        for (long row = 0; row < rows; row++) {
+            final long label = tokens.nextLong();
+            double allSquares = 0;
+            double last = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                double squares = 0;
+                for (int c = 0; c < sizes[i]; c++) {
+                    last = tokens.nextValue();
+                    squares += last * last;
+                }
+                allSquares += squares;
+                fields[i].add(sizes[i] == 1 ? last : Math.sqrt(squares), label);
+            }
+            if (all != null) {
+                all.add(total == 1 ? last : Math.sqrt(allSquares), label);
+            }
+        }
+    }
+
+    /**
+     * Values of a field grouped by tuples, the norm of each tuple being added to the reduction. The values are given
+     * one by one, or as text.
+     */
+    private static final class Tuples {
+
+        private final Reduction reduction;
+
+        private int components = 1;
+
+        private int component;
+
+        private double last;
+
+        private double squares;
+
+        private long tuple;
+
+        private char[] number = new char[64];
+
+        private int length;
+
+        Tuples(final Reduction reduction) {
+            this.reduction = reduction;
+        }
+
+        void read(final Tokens tokens, final long count, final int size) throws IOException {
+            this.components = size;
+            for (long i = 0; i < count * size; i++) {
+                this.add(tokens.nextValue());
+            }
+        }
+
+        void add(final double value) {
+            this.last = value;
+            this.squares += value * value;
+            if (++this.component == this.components) {
+                this.reduction.add(this.components == 1 ? this.last : Math.sqrt(this.squares), this.tuple++);
+                this.component = 0;
+                this.squares = 0;
+            }
+        }
+
+        /**
+         * @param text
+         *            characters of the text of the values, a number possibly continuing in the next ones.
+         */
+        void accept(final char[] text, final int start, final int count) {
+            for (int i = start; i < start + count; i++) {
+                final char c = text[i];
+                if (c <= ' ') {
+                    this.endOfNumber();
+                } else {
+                    if (this.length == this.number.length) {
+                        this.number = Arrays.copyOf(this.number, 2 * this.length);
+                    }
+                    this.number[this.length++] = c;
+                }
+            }
+        }
+
+        void endOfNumber() {
+            if (this.length > 0) {
+                this.add(CsvColumns.parseDouble(this.number, 0, this.length));
+                this.length = 0;
+            }
+        }
+    }
+
+    /**
+     * Whitespace separated tokens, read through a reusable buffer.
+     */
+    private static final class Tokens {
+
+        private final Reader reader;
+
+        private final char[] input = new char[64 * 1024];
+
+        private int position;
+
+        private int limit;
+
+        private char[] token = new char[64];
+
+        private int length;
+
+        private boolean pushedBack;
+
+        Tokens(final Reader reader) {
+            this.reader = reader;
+        }
+
+        private int read() throws IOException {
+            if (this.position == this.limit) {
+                this.limit = Math.max(this.reader.read(this.input), 0);
+                this.position = 0;
+                if (this.limit == 0) {
+                    return -1;
+                }
+            }
+            return this.input[this.position++];
+        }
+
+        /**
+         * @return true if a token was read, false at the end of the file
+         */
+        boolean next() throws IOException {
+            if (this.pushedBack) {
+                this.pushedBack = false;
+                return this.length > 0;
+            }
+            int c = this.read();
+            while ((c >= 0) && (c <= ' ')) {
+                c = this.read();
+            }
+            this.length = 0;
+            while (c > ' ') {
+                if (this.length == this.token.length) {
+                    this.token = Arrays.copyOf(this.token, 2 * this.length);
+                }
+                this.token[this.length++] = (char) c;
+                c = this.read();
+            }
+            if (c >= 0) {
+                // the separator may end the line
+                this.position--;
+            }
+            return this.length > 0;
+        }
+
+        /**
+         * The current token is given again by the next call to {@link #next()}.
+         */
+        void pushBack() {
+            this.pushedBack = true;
+        }
+
+        private void require() throws IOException {
+            if (!this.next()) {
+                throw new EOFException("unexpected end of file");
+            }
+        }
+
+        String nextText() throws IOException {
+            this.require();
+            return new String(this.token, 0, this.length);
+        }
+
+        long nextLong() throws IOException {
+            this.require();
+            return (long) this.value();
+        }
+
+        double nextValue() throws IOException {
+            this.require();
+            return this.value();
+        }
+
+        double value() {
+            return CsvColumns.parseDouble(this.token, 0, this.length);
+        }
+
+        /**
+         * @param keyword
+         *            a keyword, in lower case.
+         * @return true if the current token is the keyword, case insensitive
+         */
+        boolean is(final String keyword) {
+            if (this.length != keyword.length()) {
+                return false;
+            }
+            for (int i = 0; i < this.length; i++) {
+                if (Character.toLowerCase(this.token[i]) != keyword.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean startsWith(final char c) {
+            return (this.length > 0) && (this.token[0] == c);
+        }
+
+        void skip(final long count) throws IOException {
+            for (long i = 0; i < count; i++) {
+                this.require();
+            }
+        }
+
+        /**
+         * Skip the rest of the current line.
+         */
+        void skipLine() throws IOException {
+            int c = this.read();
+            while ((c >= 0) && (c != '\n')) {
+                c = this.read();
+            }
+        }
+
+        void skipLines(final long count) throws IOException {
+            for (long i = 0; i < count; i++) {
+                this.skipLine();
+            }
+        }
+
+        /**
+         * @return the rest of the current line, trimmed
+         */
+        String line() throws IOException {
+            final StringBuilder line = new StringBuilder();
+            int c = this.read();
+            while ((c >= 0) && (c != '\n')) {
+                line.append((char) c);
+                c = this.read();
+            }
+            return line.toString().trim();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming lexer of Gibiane, the language of the Cast3m datasets.<br>
+ * The input is read line by line and cut into statements terminated by ';'. Each statement holds its tokens:
+ * <ul>
+ * <li>words: operator and variable names ({@code MESS}, {@code @EXCEL1}, {@code ta});</li>
+ * <li>numbers: {@code 0.3}, {@code 210e9};</li>
+ * <li>strings: {@code 'EXCE'}, the token text is the content without the quotes, a ';' in a string does not end
+ * the statement;</li>
+ * <li>operators: any other character, {@code **} being one operator.</li>
+ * </ul>
+ * A line starting with '*' is a comment, as well as the end of a line after a ';' followed by '*'.
+ */
+final class GibianeLexer {
+
+    /** Type of the tokens */
+    static final byte WORD = 0;
+
+    static final byte NUMBER = 1;
+
+    static final byte STRING = 2;
+
+    static final byte OPERATOR = 3;
+
+    /**
+     * A statement: its tokens, without the ';' terminator, and its text, with it.
+     */
+    static final class Statement {
+
+        private final String text;
+
+        private final int line;
+
+        private final byte[] types;
+
+        private final String[] tokens;
+
+        private Statement(final String text, final int line, final byte[] types, final String[] tokens) {
+            this.text = text;
+            this.line = line;
+            this.types = types;
+            this.tokens = tokens;
+        }
+
+        /**
+         * @return the text of the statement up to its ';' included, its lines trimmed and joined with a space
+         */
+        String getText() {
+            return this.text;
+        }
+
+        /**
+         * @return the number (from 1) of the line where the statement starts
+         */
+        int getLine() {
+            return this.line;
+        }
+
+        /**
+         * @return the number of tokens
+         */
+        int size() {
+            return this.tokens.length;
+        }
+
+        /**
+         * @return the type of the token ({@link GibianeLexer#WORD}, {@link GibianeLexer#NUMBER},
+         *         {@link GibianeLexer#STRING} or {@link GibianeLexer#OPERATOR})
+         */
+        byte getType(final int index) {
+            return this.types[index];
+        }
+
+        /**
+         * @return the text of the token, the content for a string
+         */
+        String getToken(final int index) {
+            return this.tokens[index];
+        }
+
+        /**
+         * @return true if the token is this operator
+         */
+        boolean isOperator(final int index, final String operator) {
+            return (index < this.tokens.length) && (this.types[index] == GibianeLexer.OPERATOR)
+                    && this.tokens[index].equals(operator);
+        }
+
+        /**
+         * Cast3m recognizes its keywords by their first four letters, quoted or not.
+         *
+         * @param keyword
+         *            the keyword, in lower case.
+         * @return true if the token is this keyword
+         */
+        boolean isKeyword(final int index, final String keyword) {
+            if ((index >= this.tokens.length)
+                    || ((this.types[index] != GibianeLexer.WORD) && (this.types[index] != GibianeLexer.STRING))) {
+                return false;
+            }
+            final String token = this.tokens[index].trim();
+            final int length = Math.min(keyword.length(), 4);
+            return (token.length() >= length) && (token.length() <= keyword.length())
+                    && keyword.regionMatches(true, 0, token, 0, token.length());
+        }
+
+        /**
+         * @return true if the token is a word equal to the given one, case insensitive
+         */
+        boolean isWord(final int index, final String word) {
+            return (index < this.tokens.length) && (this.types[index] == GibianeLexer.WORD)
+                    && this.tokens[index].equalsIgnoreCase(word);
+        }
+
+        @Override
+        public String toString() {
+            return this.text;
+        }
+    }
+
+    private final List<Statement> statements = new ArrayList<>();
+
+    /** Text of the current statement */
+    private final StringBuilder text = new StringBuilder();
+
+    private byte[] types = new byte[16];
+
+    private String[] tokens = new String[16];
+
+    private int tokenCount;
+
+    private int statementLine;
+
+    private GibianeLexer() {
+    }
+
+    /**
+     * @param file
+     *            a dgibi file.
+     * @return the statements of the file
+     */
+    static List<Statement> parse(final File file) {
+        try (final BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.ISO_8859_1)) {
+            return GibianeLexer.parse(reader);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * @param reader
+     *            the dgibi content.
+     * @return the statements of the content
+     * @throws IOException
+     *             if the content cannot be read
+     */
+    static List<Statement> parse(final Reader reader) throws IOException {
+        final BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader
+                : new BufferedReader(reader);
+        final GibianeLexer lexer = new GibianeLexer();
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            lexer.line(line, ++number);
+        }
+        return lexer.end();
+    }
+
+    /**
+     * @param lines
+     *            the lines of a dgibi content.
+     * @return the statements of the lines
+     */
+    static List<Statement> parse(final List<String> lines) {
+        final GibianeLexer lexer = new GibianeLexer();
+        int number = 0;
+        for (final String line : lines) {
+            lexer.line(line, ++number);
+        }
+        return lexer.end();
+    }
+
+    private List<Statement> end() {
+        if (this.tokenCount > 0) {
+            // unterminated statement at the end of the input
+            this.endOfStatement();
+        }
+        return this.statements;
+    }
+
+    private void line(final String line, final int number) {
+        final int length = line.length();
+        int index = GibianeLexer.skipBlanks(line, 0);
+        if ((index < length) && (line.charAt(index) == '*') && ((index == 0) || (this.tokenCount == 0))) {
+            // comment line
+            return;
+        }
+
+        int segmentStart = index;
+        while (index < length) {
+            final char c = line.charAt(index);
+            if (c <= ' ') {
+                index++;
+            } else if (c == ';') {
+                this.appendText(line, segmentStart, index + 1);
+                this.endOfStatement();
+                index = GibianeLexer.skipBlanks(line, index + 1);
+                if ((index < length) && (line.charAt(index) == '*')) {
+                    // trailing comment
+                    return;
+                }
+                segmentStart = index;
+            } else {
+                if (this.tokenCount == 0) {
+                    this.statementLine = number;
+                }
+                index = this.token(line, index);
+            }
+        }
+        if (segmentStart < length) {
+            this.appendText(line, segmentStart, length);
+        }
+    }
+
+    /**
+     * Read the token starting at the given index.
+     *
+     * @return the index after the token
+     */
+    private int token(final String line, final int start) {
+        final int length = line.length();
+        final char c = line.charAt(start);
+        int index = start + 1;
+        if (c == '\'') {
+            // string, up to the closing quote or the end of the line
+            while ((index < length) && (line.charAt(index) != '\'')) {
+                index++;
+            }
+            this.add(GibianeLexer.STRING, line.substring(start + 1, index));
+            return Math.min(index + 1, length);
+        }
+        if (GibianeLexer.isDigit(c) || ((c == '.') && (index < length) && GibianeLexer.isDigit(line.charAt(index)))) {
+            index = GibianeLexer.skipDigits(line, index);
+            if ((index < length) && (line.charAt(index) == '.')) {
+                index = GibianeLexer.skipDigits(line, index + 1);
+            }
+            if ((index < length) && ((line.charAt(index) == 'e') || (line.charAt(index) == 'E')
+                    || (line.charAt(index) == 'd') || (line.charAt(index) == 'D'))) {
+                int exponent = index + 1;
+                if ((exponent < length) && ((line.charAt(exponent) == '+') || (line.charAt(exponent) == '-'))) {
+                    exponent++;
+                }
+                if ((exponent < length) && GibianeLexer.isDigit(line.charAt(exponent))) {
+                    index = GibianeLexer.skipDigits(line, exponent);
+                }
+            }
+            this.add(GibianeLexer.NUMBER, line.substring(start, index));
+            return index;
+        }
+        if (GibianeLexer.isWordChar(c)) {
+            while ((index < length) && GibianeLexer.isWordChar(line.charAt(index))) {
+                index++;
+            }
+            this.add(GibianeLexer.WORD, line.substring(start, index));
+            return index;
+        }
+        if ((c == '*') && (index < length) && (line.charAt(index) == '*')) {
+            this.add(GibianeLexer.OPERATOR, "**");
+            return index + 1;
+        }
+        this.add(GibianeLexer.OPERATOR, String.valueOf(c));
+        return index;
+    }
+
+    private void add(final byte type, final String token) {
+        if (this.tokenCount == this.tokens.length) {
+            this.types = Arrays.copyOf(this.types, 2 * this.tokenCount);
+            this.tokens = Arrays.copyOf(this.tokens, 2 * this.tokenCount);
+        }
+        this.types[this.tokenCount] = type;
+        this.tokens[this.tokenCount] = token;
+        this.tokenCount++;
+    }
+
+    private void appendText(final String line, final int start, final int end) {
+        final String segment = line.substring(start, end).trim();
+        if (!segment.isEmpty()) {
+            if (this.text.length() > 0) {
+                this.text.append(' ');
+            }
+            this.text.append(segment);
+        }
+    }
+
+    private void endOfStatement() {
+        if (this.tokenCount > 0) {
+            this.statements.add(new Statement(this.text.toString(), this.statementLine,
+                    Arrays.copyOf(this.types, this.tokenCount), Arrays.copyOf(this.tokens, this.tokenCount)));
+        }
+        this.text.setLength(0);
+        this.tokenCount = 0;
+    }
+
+    private static int skipBlanks(final String line, final int start) {
+        int index = start;
+        while ((index < line.length()) && (line.charAt(index) <= ' ')) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int skipDigits(final String line, final int start) {
+        int index = start;
+        while ((index < line.length()) && GibianeLexer.isDigit(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isDigit(final char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    private static boolean isWordChar(final char c) {
+        return Character.isLetterOrDigit(c) || (c == '_') || (c == '@') || (c == '#') || (c == '$');
+    }
+}
@@ -0,0 +1,150 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Single pass extraction of the scalars printed in the Cast3m listing with {@code MESS 'var=' var;}.<br>
+ * All the variables are matched together: each {@code =} of a line is looked up backwards in a table of the
+ * registered {@code name=} prefixes, grouped by length. The listing is read line by line, so its size does not
+ * matter.
+ */
+class ListingScanner {
+
+    /** Lower case variable names, grouped by length, associated to the registered variable name */
+    private final Map<Integer, Map<String, String>> namesByLength = new TreeMap<>();
+
+    private final int variableCount;
+
+    /**
+     * @param variables
+     *            the names of the variables to look for.
+     */
+    ListingScanner(final Collection<String> variables) {
+        int count = 0;
+        for (final String variable : variables) {
+            if (variable.isEmpty()) {
+                continue;
+            }
+            final Map<String, String> names = this.namesByLength.computeIfAbsent(variable.length(),
+                    l -> new HashMap<>());
+            if (names.put(variable.toLowerCase(Locale.ROOT), variable) == null) {
+                count++;
+            }
+        }
+        this.variableCount = count;
+    }
+
+    /**
+     * @param listing
+     *            the Cast3m listing (usually "castem.out"), or its compressed file ({@link BlockGzip}).
+     * @return the value of every variable found in the listing, the first occurrence wins
+     */
+    Map<String, Double> scan(final File listing) {
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(BlockGzip.open(listing), StandardCharsets.ISO_8859_1), 64 * 1024)) {
+            return this.scan(reader);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * @param reader
+     *            the listing content.
+     * @return the value of every variable found in the listing, the first occurrence wins
+     * @throws IOException
+     *             if the listing cannot be read
+     */
+    Map<String, Double> scan(final BufferedReader reader) throws IOException {
+        final Map<String, Double> result = new HashMap<>();
+        String line;
+        while ((result.size() < this.variableCount) && ((line = reader.readLine()) != null)) {
+            this.accept(line, result);
+        }
+        return result;
+    }
+
+    /**
+     * Look for the registered variables in one line of the listing.
+     *
+     * @param line
+     *            the line of the listing.
+     * @param result
+     *            the values already found, completed with the new ones.
+     */
+    void accept(final String line, final Map<String, Double> result) {
+        // remove $
+        if (line.startsWith("$")) {
+            return;
+        }
+        int end = line.indexOf(';');
+        if (end < 0) {
+            end = line.length();
+        }
+
+        int equal = line.indexOf('=');
+        while ((equal >= 0) && (equal < end)) {
+            for (final Entry<Integer, Map<String, String>> names : this.namesByLength.entrySet()) {
+                final int length = names.getKey();
+                if (length > equal) {
+                    break;
+                }
+                final String key = line.substring(equal - length, equal).toLowerCase(Locale.ROOT);
+                final String variable = names.getValue().get(key);
+                if ((variable != null) && !result.containsKey(variable)) {
+                    final Double value = ListingScanner.parseValue(line, equal + 1, end);
+                    if (value != null) {
+                        result.put(variable, value);
+                    }
+                }
+            }
+            equal = line.indexOf('=', equal + 1);
+        }
+    }
+
+    /**
+     * Read the number following a {@code name=} prefix, blanks allowed before it.
+     */
+    private static Double parseValue(final String line, final int start, final int end) {
+        int index = start;
+        while ((index < end) && Character.isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        final int valueStart = index;
+        while ((index < end) && ListingScanner.isNumberChar(line.charAt(index))) {
+            index++;
+        }
+        if (index == valueStart) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(line.substring(valueStart, index));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isNumberChar(final char c) {
+        return ((c >= '0') && (c <= '9')) || (c == '.') || (c == '+') || (c == '-') || (c == 'E') || (c == 'e');
+    }
+}
@@ -0,0 +1,187 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Incremental reader of a growing Cast3m listing.<br>
+ * Only the bytes appended since the previous {@link #update()} are read: the last error banner, the last time step
+ * line and the number of lines are kept up to date in memory. When the listing is compressed by {@link BlockGzip},
+ * only its new complete members are inflated.
+ */
+class ListingTail {
+
+    /** Marker of the error banners of Cast3m */
+    static final String ERROR_MARKER = "******";
+
+    /** Marker of the time step lines of PASAPAS */
+    static final String STEP_MARKER = "PAS #";
+
+    /** Physical time in a time step line, as the first group */
+    static final String TIME_PATTERN = "TEMPS\\s*[=:]?\\s*([-+]?[0-9.]+(?:[EeDd][-+]?[0-9]+)?)";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    private final byte[] buffer = new byte[ListingTail.BUFFER_SIZE];
+
+    /** Characters of the current line, not yet terminated */
+    private final StringBuilder pending = new StringBuilder();
+
+    private long offset;
+
+    /** Number of members of the compressed listing already read */
+    private int members;
+
+    private long lineCount;
+
+    private String lastErrorLine = "";
+
+    private String lastStepLine = "";
+
+    /** Receives each complete line, or null */
+    private Consumer<String> listener;
+
+    /**
+     * @param file
+     *            the listing to follow (it may not exist yet).
+     */
+    ListingTail(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param listener
+     *            receives each complete line read by {@link #update()}, or null.
+     */
+    void setListener(final Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Read the bytes appended to the listing since the last call.
+     *
+     * @return true if new bytes were read
+     */
+    boolean update() {
+        final File compressed = BlockGzip.resolve(this.file);
+        if (compressed != this.file) {
+            return this.updateCompressed(compressed);
+        }
+        final long length = this.file.length();
+        if (length < this.offset) {
+            // The listing was truncated or replaced: start again
+            this.reset();
+        }
+        if (length == this.offset) {
+            return false;
+        }
+
+        try (final RandomAccessFile input = new RandomAccessFile(this.file, "r")) {
+            input.seek(this.offset);
+            int read;
+            while ((read = input.read(this.buffer)) > 0) {
+                this.consume(read);
+                this.offset += read;
+            }
+        } catch (final IOException e) {
+            // The listing may not exist yet or be locked: retry at next update
+            return false;
+        }
+        return true;
+    }
+
+    private boolean updateCompressed(final File compressed) {
+        final List<long[]> index = BlockGzip.readIndex(compressed);
+        if (index.size() < this.members) {
+            // The listing was replaced: start again
+            this.reset();
+        }
+        if (index.size() == this.members) {
+            return false;
+        }
+
+        final long start = this.members == 0 ? 0 : index.get(this.members - 1)[0];
+        try (final InputStream input = BlockGzip.open(compressed, start, index.get(index.size() - 1)[0])) {
+            int read;
+            while ((read = input.read(this.buffer)) > 0) {
+                this.consume(read);
+                this.offset += read;
+            }
+        } catch (final IOException e) {
+            // retry at next update
+            return false;
+        }
+        this.members = index.size();
+        return true;
+    }
+
+    private void consume(final int read) {
+        for (int i = 0; i < read; i++) {
+            final char c = (char) (this.buffer[i] & 0xFF);
+            if (c == '\n') {
+                this.endOfLine();
+            } else if (c != '\r') {
+                this.pending.append(c);
+            }
+        }
+    }
+
+    private void endOfLine() {
+        this.lineCount++;
+        if (this.pending.indexOf(ListingTail.ERROR_MARKER) >= 0) {
+            this.lastErrorLine = this.pending.toString();
+        }
+        if (this.pending.indexOf(ListingTail.STEP_MARKER) >= 0) {
+            this.lastStepLine = this.pending.toString();
+        }
+        if (this.listener != null) {
+            this.listener.accept(this.pending.toString());
+        }
+        this.pending.setLength(0);
+    }
+
+    private void reset() {
+        this.offset = 0;
+        this.members = 0;
+        this.lineCount = 0;
+        this.lastErrorLine = "";
+        this.lastStepLine = "";
+        this.pending.setLength(0);
+    }
+
+    /**
+     * @return the last complete line containing {@value #ERROR_MARKER}, or an empty string
+     */
+    String getLastErrorLine() {
+        return this.lastErrorLine;
+    }
+
+    /**
+     * @return the last complete line containing {@value #STEP_MARKER}, or an empty string
+     */
+    String getLastStepLine() {
+        return this.lastStepLine;
+    }
+
+    /**
+     * @return the number of lines read so far, including the one being written
+     */
+    long getLineCount() {
+        return this.pending.length() > 0 ? this.lineCount + 1 : this.lineCount;
+    }
+}
@@ -0,0 +1,226 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rules evaluated on the lines of a running listing, to stop the runs which diverge or stall:
+ * <ul>
+ * <li>{@value #STALL_PROPERTY}: no new {@value ListingTail#STEP_MARKER} line for this number of seconds, once the
+ * first one was written;</li>
+ * <li>{@value #MIN_TIME_STEP_PROPERTY}: the time step, difference between the times of two step lines (read with
+ * {@value #TIME_PATTERN_PROPERTY}), falls below this value;</li>
+ * <li>{@value #MAX_ERRORS_PROPERTY}: this number of lines match {@value #ERROR_PATTERN_PROPERTY} (default:
+ * {@code ERREUR});</li>
+ * <li>{@value #PATTERN_PROPERTY}: a line matches this regular expression.</li>
+ * </ul>
+ * The rules are given by system properties of the calculator, a rule without property being disabled. When a rule
+ * fires, {@link #stop(File)} kills the process of the {@code PID} file written by {@code Cast3m.sh} with all its
+ * descendants (the {@code castem20} wrapper starts the solver as a child), and writes the reason in the
+ * {@value #REASON_FILE} file, reported by the script as the cause of the failure.
+ */
+class ListingWatchdog implements Consumer<String> {
+
+    static final String STALL_PROPERTY = "cast3m.watchdog.stall";
+
+    static final String MIN_TIME_STEP_PROPERTY = "cast3m.watchdog.minTimeStep";
+
+    static final String TIME_PATTERN_PROPERTY = "cast3m.watchdog.timePattern";
+
+    static final String MAX_ERRORS_PROPERTY = "cast3m.watchdog.maxErrors";
+
+    static final String ERROR_PATTERN_PROPERTY = "cast3m.watchdog.errorPattern";
+
+    static final String PATTERN_PROPERTY = "cast3m.watchdog.pattern";
+
+    /** File of the reason of the stop, in the directory of the case */
+    static final String REASON_FILE = "WATCHDOG";
+
+    private final long stallMillis;
+
+    private final double minTimeStep;
+
+    private final Pattern timePattern;
+
+    private final int maxErrors;
+
+    private final Pattern errorPattern;
+
+    private final Pattern pattern;
+
+    /** Date of the last step line, or -1 before the first one */
+    private long lastStep = -1;
+
+    private double lastTime = Double.NaN;
+
+    private int errors;
+
+    private String reason;
+
+    /**
+     * @param stallMillis
+     *            the maximum delay between two step lines (ms), or 0.
+     * @param minTimeStep
+     *            the minimum time step, or 0.
+     * @param timePattern
+     *            the pattern of the time in a step line, its first group being the value.
+     * @param maxErrors
+     *            the number of error lines stopping the run, or 0.
+     * @param errorPattern
+     *            the pattern of the error lines.
+     * @param pattern
+     *            the pattern of the lines stopping the run, or null.
+     */
+    ListingWatchdog(final long stallMillis, final double minTimeStep, final Pattern timePattern, final int maxErrors,
+            final Pattern errorPattern, final Pattern pattern) {
+        this.stallMillis = stallMillis;
+        this.minTimeStep = minTimeStep;
+        this.timePattern = timePattern;
+        this.maxErrors = maxErrors;
+        this.errorPattern = errorPattern;
+        this.pattern = pattern;
+    }
+
+    /**
+     * @return the watchdog configured by the system properties, or null if no rule is set
+     */
+    static ListingWatchdog getDefault() {
+        final long stall = Long.getLong(ListingWatchdog.STALL_PROPERTY, 0L);
+        final double minTimeStep = Double
+                .parseDouble(System.getProperty(ListingWatchdog.MIN_TIME_STEP_PROPERTY, "0"));
+        final int maxErrors = Integer.getInteger(ListingWatchdog.MAX_ERRORS_PROPERTY, 0);
+        final String pattern = System.getProperty(ListingWatchdog.PATTERN_PROPERTY);
+        if ((stall <= 0) && (minTimeStep <= 0) && (maxErrors <= 0) && (pattern == null)) {
+            return null;
+        }
+        return new ListingWatchdog(1000 * stall, minTimeStep,
+                Pattern.compile(System.getProperty(ListingWatchdog.TIME_PATTERN_PROPERTY,
+                        ListingTail.TIME_PATTERN)),
+                maxErrors, Pattern.compile(System.getProperty(ListingWatchdog.ERROR_PATTERN_PROPERTY, "ERREUR")),
+                pattern == null ? null : Pattern.compile(pattern));
+    }
+
+    @Override
+    public void accept(final String line) {
+        this.accept(line, System.currentTimeMillis());
+    }
+
+    /**
+     * Evaluate the rules on a new line of the listing.
+     *
+     * @param line
+     *            the line.
+     * @param now
+     *            the current date (ms).
+     */
+    void accept(final String line, final long now) {
+        if (this.reason != null) {
+            return;
+        }
+        if (line.contains(ListingTail.STEP_MARKER)) {
+            this.lastStep = now;
+            this.step(line);
+        }
+        if ((this.maxErrors > 0) && this.errorPattern.matcher(line).find() && (++this.errors >= this.maxErrors)) {
+            this.reason = this.errors + " lines match '" + this.errorPattern.pattern() + "', last one: "
+                    + line.trim();
+        }
+        if ((this.reason == null) && (this.pattern != null) && this.pattern.matcher(line).find()) {
+            this.reason = "line matches '" + this.pattern.pattern() + "': " + line.trim();
+        }
+    }
+
+    private void step(final String line) {
+        if (this.minTimeStep <= 0) {
+            return;
+        }
+        final Matcher matcher = this.timePattern.matcher(line);
+        if (!matcher.find()) {
+            return;
+        }
+        final double time;
+        try {
+            time = Double.parseDouble(matcher.group(1).replace('D', 'E').replace('d', 'e'));
+        } catch (final NumberFormatException e) {
+            return;
+        }
+        final double step = time - this.lastTime;
+        if ((step > 0) && (step < this.minTimeStep)) {
+            this.reason = "time step " + step + " below " + this.minTimeStep + " at time " + time;
+        }
+        this.lastTime = time;
+    }
+
+    /**
+     * @param now
+     *            the current date (ms).
+     * @return the reason to stop the run, or null
+     */
+    String check(final long now) {
+        if ((this.reason == null) && (this.stallMillis > 0) && (this.lastStep >= 0)
+                && ((now - this.lastStep) > this.stallMillis)) {
+            this.reason = "no new time step for " + ((now - this.lastStep) / 1000) + " s";
+        }
+        return this.reason;
+    }
+
+    /**
+     * Kill the processes of the case, and record the reason.
+     *
+     * @param dir
+     *            the directory of the case, holding the {@code PID} file.
+     * @return true if a process was killed
+     */
+    boolean stop(final File dir) {
+        try {
+            Files.write(new File(dir, ListingWatchdog.REASON_FILE).toPath(),
+                    this.reason.getBytes(StandardCharsets.ISO_8859_1));
+            final File pidFile = new File(dir, "PID");
+            if (!pidFile.isFile()) {
+                return false;
+            }
+            final List<Long> pids = new ArrayList<>();
+            for (final String pid : Files.readAllLines(pidFile.toPath(), StandardCharsets.ISO_8859_1)) {
+                if (pid.trim().matches("[0-9]+")) {
+                    ProcessSampler.addTree(Long.parseLong(pid.trim()), pids);
+                }
+            }
+            // stop the whole tree first, so that no process is started or reaped while it is killed
+            ListingWatchdog.signal("-STOP", pids);
+            return ListingWatchdog.signal("-KILL", pids);
+        } catch (final IOException e) {
+            System.err.println("Unable to stop the case: " + e.getMessage());
+            return false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the signal was sent to a process at least
+     */
+    private static boolean signal(final String signal, final List<Long> pids) throws IOException, InterruptedException {
+        boolean sent = false;
+        for (final Long pid : pids) {
+            sent |= new ProcessBuilder("kill", signal, pid.toString()).start().waitFor() == 0;
+        }
+        return sent;
+    }
+}
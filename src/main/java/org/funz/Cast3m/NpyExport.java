@@ -0,0 +1,166 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+
+/**
+ * Export of the array outputs in NPY files (version 1.0, little-endian float64), so that they are not serialized as
+ * text by Funz: the output then holds the path of its file, {@value #DIRECTORY}/name.npy in the directory of the
+ * case. A {@code double[]} is saved with the shape (n,), the columns of a {@code double[][]} with the shape (rows,
+ * columns) in Fortran order: each column is contiguous in the file, which can be memory-mapped
+ * ({@code numpy.load(f, mmap_mode='r')}).<br>
+ * The export is enabled by the {@value #PROPERTY} system property set to {@value #NPY}.
+ */
+final class NpyExport {
+
+    static final String PROPERTY = "cast3m.export";
+
+    static final String NPY = "npy";
+
+    /** Directory of the files, in the directory of the case */
+    static final String DIRECTORY = "arrays";
+
+    private static final byte[] MAGIC = { (byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0 };
+
+    /** Alignment of the data, header included */
+    private static final int ALIGNMENT = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private NpyExport() {
+        // see getDefault()
+    }
+
+    /**
+     * @return the export configured by the system properties, or null if it is disabled
+     */
+    static NpyExport getDefault() {
+        final String format = System.getProperty(NpyExport.PROPERTY);
+        if (format == null) {
+            return null;
+        }
+        if (!NpyExport.NPY.equals(format)) {
+            System.err.println("Unknown " + NpyExport.PROPERTY + ": " + format);
+            return null;
+        }
+        return new NpyExport();
+    }
+
+    /**
+     * @param outdir
+     *            the directory of the case.
+     * @param loader
+     *            the reader of some outputs.
+     * @return a reader exporting the array outputs of the given one, their value being replaced by the path of
+     *         their file
+     */
+    Consumer<Map<String, Object>> wrap(final File outdir, final Consumer<Map<String, Object>> loader) {
+        return result -> {
+            final Map<String, Object> outputs = new HashMap<>();
+            loader.accept(outputs);
+            for (final Entry<String, Object> output : outputs.entrySet()) {
+                final Object value = output.getValue();
+                if ((value instanceof double[]) || (value instanceof double[][])) {
+                    final String path = NpyExport.DIRECTORY + '/' + output.getKey() + ".npy";
+                    try {
+                        final File file = new File(outdir, path);
+                        file.getParentFile().mkdirs();
+                        if (value instanceof double[]) {
+                            NpyExport.write(file, (double[]) value);
+                        } else {
+                            NpyExport.write(file, (double[][]) value);
+                        }
+                        output.setValue(path);
+                    } catch (final IOException e) {
+                        System.err.println("Unable to export " + output.getKey() + ": " + e.getMessage());
+                    }
+                }
+            }
+            result.putAll(outputs);
+        };
+    }
+
+    /**
+     * @param file
+     *            the NPY file.
+     * @param values
+     *            the values, saved with the shape (n,).
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    static void write(final File file, final double[] values) throws IOException {
+        NpyExport.write(file, new double[][] { values }, values.length, "(" + values.length + ",)");
+    }
+
+    /**
+     * @param file
+     *            the NPY file.
+     * @param columns
+     *            the columns, saved with the shape (rows, columns) in Fortran order, the shorter columns being padded
+     *            with NaN.
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    static void write(final File file, final double[][] columns) throws IOException {
+        int rows = 0;
+        for (final double[] column : columns) {
+            rows = Math.max(rows, column.length);
+        }
+        NpyExport.write(file, columns, rows, "(" + rows + ", " + columns.length + ")");
+    }
+
+    private static void write(final File file, final double[][] columns, final int rows, final String shape)
+            throws IOException {
+        final StringBuilder header = new StringBuilder("{'descr': '<f8', 'fortran_order': True, 'shape': ")
+                .append(shape).append(", }");
+        // magic, version and header length, then the header padded with spaces and ended by a new line
+        final int unpadded = NpyExport.MAGIC.length + 2 + header.length() + 1;
+        final int padding = (NpyExport.ALIGNMENT - (unpadded % NpyExport.ALIGNMENT)) % NpyExport.ALIGNMENT;
+        for (int i = 0; i < padding; i++) {
+            header.append(' ');
+        }
+        header.append('\n');
+
+        final ByteBuffer buffer = ByteBuffer.allocate(NpyExport.BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.put(NpyExport.MAGIC).putShort((short) header.length())
+                    .put(header.toString().getBytes(StandardCharsets.US_ASCII));
+            for (final double[] column : columns) {
+                for (int row = 0; row < rows; row++) {
+                    if (buffer.remaining() < Double.BYTES) {
+                        NpyExport.flush(channel, buffer);
+                    }
+                    buffer.putDouble(row < column.length ? column[row] : Double.NaN);
+                }
+            }
+            NpyExport.flush(channel, buffer);
+        }
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,288 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Persistent cache of the outputs found in the input files by {@link Cast3mIOPlugin#setInputFiles(File...)}.<br>
+ * The outputs are stored in a properties file named after a SHA-256 hash of the canonical path and of the content
+ * of the input files, the plugin version (the hash of its jar) and {@link DGibiHelper#ANALYSIS_VERSION}, along with
+ * the hash of the included files (see {@link DGibiGraph}) and the procedure files of their directories, checked on
+ * load: a procedure added next to a dataset is taken into account. The cache directory is given by the {@value #DIRECTORY_PROPERTY}
+ * system property (default: {@code ~/.cache/funz/Cast3m}), the least recently used files being evicted above
+ * {@value #SIZE_PROPERTY} MB (default: 64), and the cache is disabled when the {@value #ENABLED_PROPERTY} system
+ * property is "false".
+ */
+class OutputCache {
+
+    static final String DIRECTORY_PROPERTY = "cast3m.cache.dir";
+
+    static final String ENABLED_PROPERTY = "cast3m.cache";
+
+    static final String SIZE_PROPERTY = "cast3m.cache.size";
+
+    private static final String SUFFIX = ".outputs";
+
+    /** Prefix of the files the outputs depend on, followed by their path; the value is their hash */
+    private static final String DEPENDENCY_PREFIX = "dependency:";
+
+    /** Prefix of the directories of the files, followed by their path; the value is the list of their procedures */
+    private static final String PROCEDURES_PREFIX = "procedures:";
+
+    /** Version of the plugin, computed once */
+    private static String pluginVersion;
+
+    private final File directory;
+
+    /** Maximum size of the cache (bytes) */
+    private final long maxSize;
+
+    /**
+     * @param directory
+     *            the directory of the cache files, created on first store.
+     * @param maxSizeMb
+     *            the maximum size of the cache (MB).
+     */
+    OutputCache(final File directory, final long maxSizeMb) {
+        this.directory = directory;
+        this.maxSize = 1024 * 1024 * maxSizeMb;
+    }
+
+    /**
+     * @return the cache configured by the system properties, or null if it is disabled
+     */
+    static OutputCache getDefault() {
+        if ("false".equalsIgnoreCase(System.getProperty(OutputCache.ENABLED_PROPERTY))) {
+            return null;
+        }
+        final String dir = System.getProperty(OutputCache.DIRECTORY_PROPERTY);
+        final long size = Long.getLong(OutputCache.SIZE_PROPERTY, 64L);
+        if (dir != null) {
+            return new OutputCache(new File(dir), size);
+        }
+        final File cache = new File(System.getProperty("user.home"), ".cache");
+        return new OutputCache(new File(new File(cache, "funz"), "Cast3m"), size);
+    }
+
+    /**
+     * @return the hash of the plugin jar, or of the classes of the plugin outside of a jar, or "dev" if they cannot
+     *         be read
+     */
+    static synchronized String getPluginVersion() {
+        if (OutputCache.pluginVersion == null) {
+            String version = null;
+            try {
+                final URL location = Cast3mIOPlugin.class.getProtectionDomain().getCodeSource().getLocation();
+                final File source = new File(location.toURI());
+                final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                if (source.isFile()) {
+                    OutputCache.update(digest, source);
+                    version = OutputCache.toHex(digest.digest());
+                } else {
+                    final File[] classes = new File(source, Cast3mIOPlugin.class.getPackage().getName()
+                            .replace('.', File.separatorChar)).listFiles((dir, name) -> name.endsWith(".class"));
+                    if (classes != null) {
+                        Arrays.sort(classes);
+                        for (final File file : classes) {
+                            OutputCache.update(digest, file);
+                        }
+                        version = OutputCache.toHex(digest.digest());
+                    }
+                }
+            } catch (final IOException | NoSuchAlgorithmException | URISyntaxException | RuntimeException e) {
+                // no code source
+            }
+            OutputCache.pluginVersion = version == null ? "dev" : version;
+        }
+        return OutputCache.pluginVersion;
+    }
+
+    /**
+     * @param file
+     *            a file.
+     * @return the hash of the content of the file, or an empty string if it cannot be read
+     */
+    static String hash(final File file) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            OutputCache.update(digest, file);
+            return OutputCache.toHex(digest.digest());
+        } catch (final IOException | NoSuchAlgorithmException e) {
+            return "";
+        }
+    }
+
+    /**
+     * @return the sorted names of the procedure files of the directory, the ones a dataset may call
+     */
+    private static String listProcedures(final File dir) {
+        return String.join(",", new TreeSet<>(DGibiGraph.listProcedures(dir).keySet()));
+    }
+
+    private static void update(final MessageDigest digest, final File file) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        try (final InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * @param files
+     *            the input files.
+     * @return the hash of the path and of the content of the files, or null if one of them cannot be read
+     */
+    String key(final File... files) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((OutputCache.getPluginVersion() + '/' + DGibiHelper.ANALYSIS_VERSION)
+                    .getBytes(StandardCharsets.UTF_8));
+            for (final File file : files) {
+                digest.update(file.getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                OutputCache.update(digest, file);
+                digest.update((byte) 0);
+            }
+            return OutputCache.toHex(digest.digest());
+        } catch (final IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param key
+     *            the hash of the input files.
+     * @return the cached outputs, or null if they are not in the cache or if one of the files they depend on
+     *         changed
+     */
+    Map<String, String> load(final String key) {
+        final File file = new File(this.directory, key + OutputCache.SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (final InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        } catch (final IOException e) {
+            return null;
+        }
+        final Map<String, String> outputs = new HashMap<>();
+        for (final String name : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(name);
+            if (name.startsWith(OutputCache.DEPENDENCY_PREFIX)) {
+                final File dependency = new File(name.substring(OutputCache.DEPENDENCY_PREFIX.length()));
+                if (!value.equals(OutputCache.hash(dependency))) {
+                    return null;
+                }
+            } else if (name.startsWith(OutputCache.PROCEDURES_PREFIX)) {
+                final File dir = new File(name.substring(OutputCache.PROCEDURES_PREFIX.length()));
+                if (!value.equals(OutputCache.listProcedures(dir))) {
+                    return null;
+                }
+            } else {
+                outputs.put(name, value);
+            }
+        }
+        // recently used, for the eviction
+        file.setLastModified(System.currentTimeMillis());
+        return outputs;
+    }
+
+    /**
+     * Store the outputs. Failures are ignored: the cache is only an optimization.
+     *
+     * @param key
+     *            the hash of the input files.
+     * @param outputs
+     *            the outputs found in the input files.
+     * @param dependencies
+     *            the other files read to find the outputs, with the hash of their content.
+     */
+    void store(final String key, final Map<String, String> outputs, final Map<File, String> dependencies) {
+        final Properties properties = new Properties();
+        for (final Entry<String, String> entry : outputs.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue());
+        }
+        for (final Entry<File, String> entry : dependencies.entrySet()) {
+            properties.setProperty(OutputCache.DEPENDENCY_PREFIX + entry.getKey().getPath(), entry.getValue());
+            final File dir = entry.getKey().getAbsoluteFile().getParentFile();
+            properties.setProperty(OutputCache.PROCEDURES_PREFIX + dir.getPath(), OutputCache.listProcedures(dir));
+        }
+        try {
+            Files.createDirectories(this.directory.toPath());
+            // write then rename, so that concurrent readers never see a partial file
+            final File tmp = File.createTempFile(key, ".tmp", this.directory);
+            final File file = new File(this.directory, key + OutputCache.SUFFIX);
+            try {
+                try (final OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                    properties.store(out, "Cast3m outputs");
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+            this.evict(file);
+        } catch (final IOException e) {
+            System.err.println("Unable to store the outputs in cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Delete the least recently used files above the maximum size of the cache.
+     *
+     * @param stored
+     *            the file just stored, always kept.
+     */
+    private void evict(final File stored) {
+        final File[] files = this.directory.listFiles((dir, name) -> name.endsWith(OutputCache.SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (final File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; (i < files.length) && (total > this.maxSize); i++) {
+            if (!files[i].getName().equals(stored.getName())) {
+                total -= files[i].length();
+                files[i].delete();
+            }
+        }
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,121 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Outputs of a case, each output file being read on the first {@link #get(Object)} of one of its outputs.<br>
+ * The outputs of a file are registered with the loader which reads them all at once: a lookup by name only reads the
+ * file of the output, while the iteration over the outputs, their count and their comparison read all the files. The
+ * other outputs a loader may add (statistics of other fields) are visible once its file has been read. The map is
+ * serialized as a {@link LinkedHashMap} of all the outputs.
+ */
+final class OutputMap extends AbstractMap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Outputs already read */
+    private final Map<String, Object> values;
+
+    /** Loader of the outputs not read yet */
+    private final transient Map<String, Consumer<Map<String, Object>>> pending = new LinkedHashMap<>();
+
+    /**
+     * @param values
+     *            the outputs already known.
+     */
+    OutputMap(final Map<String, Object> values) {
+        this.values = new LinkedHashMap<>(values);
+    }
+
+    /**
+     * @param keys
+     *            the outputs given by the loader.
+     * @param loader
+     *            the reader of the file of the outputs, putting them in the given map.
+     */
+    synchronized void defer(final Collection<String> keys, final Consumer<Map<String, Object>> loader) {
+        for (final String key : keys) {
+            this.pending.put(key, loader);
+        }
+    }
+
+    /**
+     * @return true if some outputs were not read yet
+     */
+    synchronized boolean isPending() {
+        return !this.pending.isEmpty();
+    }
+
+    private void load(final Consumer<Map<String, Object>> loader) {
+        this.pending.values().removeIf(l -> l == loader);
+        loader.accept(this.values);
+    }
+
+    private void loadAll() {
+        while (!this.pending.isEmpty()) {
+            this.load(this.pending.values().iterator().next());
+        }
+    }
+
+    /**
+     * Read the file of the output, if it was not read yet.
+     */
+    private void loadKey(final Object key) {
+        final Consumer<Map<String, Object>> loader = this.pending.get(key);
+        if (loader != null) {
+            this.load(loader);
+        }
+    }
+
+    @Override
+    public synchronized Object get(final Object key) {
+        this.loadKey(key);
+        return this.values.get(key);
+    }
+
+    @Override
+    public synchronized boolean containsKey(final Object key) {
+        return this.pending.containsKey(key) || this.values.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object put(final String key, final Object value) {
+        // the loader would replace the value later
+        this.loadKey(key);
+        return this.values.put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(final Object key) {
+        this.loadKey(key);
+        return this.values.remove(key);
+    }
+
+    @Override
+    public synchronized Set<Entry<String, Object>> entrySet() {
+        this.loadAll();
+        return this.values.entrySet();
+    }
+
+    private Object writeReplace() {
+        synchronized (this) {
+            this.loadAll();
+            return new LinkedHashMap<>(this.values);
+        }
+    }
+}
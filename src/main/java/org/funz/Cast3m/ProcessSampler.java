@@ -0,0 +1,341 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+/**
+ * Resources used by a running case, sampled in {@code /proc} for the processes of its {@code PID} file and their
+ * children: resident memory (current and peak), CPU time, bytes read and written, threads.<br>
+ * The CPU time and the I/O of a process are kept at their last sampled value once it ended, and the values of the
+ * processes already running at {@link #baseline()} are counted from there (a warm interpreter of the
+ * {@link Cast3mWorkerPool}). {@link #writeSummary(File, long)} records the totals of the case in the
+ * {@value #SUMMARY_FILE} file, read back as outputs by {@link #readSummary(File, Map)}.
+ */
+final class ProcessSampler {
+
+    /** File of the summary, in the directory of the case */
+    static final String SUMMARY_FILE = "RESOURCES";
+
+    static final String CPU_OUTPUT = "cast3m.cpu_s";
+
+    static final String RSS_PEAK_OUTPUT = "cast3m.rss_peak_mb";
+
+    static final String WALL_OUTPUT = "cast3m.wall_s";
+
+    static final String IO_OUTPUT = "cast3m.io_mb";
+
+    /** Clock ticks per second of the CPU times of /proc/[pid]/stat (USER_HZ) */
+    private static final double TICKS_PER_SECOND = 100;
+
+    private static final File PROC = new File("/proc");
+
+    private final File pidFile;
+
+    /** CPU time (ticks) and I/O (bytes) of each process, at its last sample */
+    private final Map<Long, long[]> usages = new HashMap<>();
+
+    /** CPU time (ticks) and I/O (bytes) of each process at the baseline */
+    private final Map<Long, long[]> offsets = new HashMap<>();
+
+    private long rss;
+
+    private long rssPeak;
+
+    private int threads;
+
+    /**
+     * @param dir
+     *            the directory of the case, holding the {@code PID} file.
+     */
+    ProcessSampler(final File dir) {
+        this.pidFile = new File(dir, "PID");
+    }
+
+    /**
+     * @return true if the resources can be sampled on this system
+     */
+    static boolean isSupported() {
+        return new File(ProcessSampler.PROC, "self/stat").isFile();
+    }
+
+    /**
+     * @param process
+     *            a process.
+     * @return the id of the process, or -1 if it is not known
+     */
+    static long getPid(final Process process) {
+        try {
+            // Process.pid() since Java 9, the pid field of UNIXProcess before
+            return (Long) Process.class.getMethod("pid").invoke(process);
+        } catch (final ReflectiveOperationException e) {
+            try {
+                final Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getInt(process);
+            } catch (final ReflectiveOperationException | RuntimeException e2) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Sample the processes of the case.
+     *
+     * @return true if a process was sampled
+     */
+    synchronized boolean sample() {
+        final List<Long> pids = new ArrayList<>();
+        if (this.pidFile.isFile()) {
+            try {
+                for (final String line : Files.readAllLines(this.pidFile.toPath(), StandardCharsets.ISO_8859_1)) {
+                    if (line.trim().matches("[0-9]+")) {
+                        ProcessSampler.addTree(Long.parseLong(line.trim()), pids);
+                    }
+                }
+            } catch (final IOException e) {
+                // removed at the end of the run
+            }
+        }
+        long rss = 0;
+        int threads = 0;
+        boolean sampled = false;
+        for (final Long pid : pids) {
+            final long[] status = ProcessSampler.readStatus(pid);
+            final long[] usage = ProcessSampler.readUsage(pid);
+            if ((status == null) || (usage == null)) {
+                continue;
+            }
+            sampled = true;
+            rss += status[0];
+            threads += status[1];
+            this.usages.put(pid, usage);
+        }
+        if (sampled) {
+            this.rss = rss;
+            this.threads = threads;
+            this.rssPeak = Math.max(this.rssPeak, rss);
+        }
+        return sampled;
+    }
+
+    /**
+     * Sample the processes, their current CPU time and I/O being left out of the totals.
+     */
+    synchronized void baseline() {
+        this.sample();
+        for (final Entry<Long, long[]> usage : this.usages.entrySet()) {
+            this.offsets.put(usage.getKey(), usage.getValue().clone());
+        }
+    }
+
+    /**
+     * @param pid
+     *            a process.
+     * @param pids
+     *            receives the process and all its descendants, parents first.
+     */
+    static void addTree(final long pid, final List<Long> pids) {
+        if (pids.contains(pid)) {
+            return;
+        }
+        pids.add(pid);
+        for (final long child : ProcessSampler.getChildren(pid)) {
+            ProcessSampler.addTree(child, pids);
+        }
+    }
+
+    /**
+     * @return the children of the process, read from the children files of its tasks, or from the parent of each
+     *         process on the kernels without these files
+     */
+    private static List<Long> getChildren(final long pid) {
+        final List<Long> children = new ArrayList<>();
+        final File[] tasks = new File(ProcessSampler.PROC, pid + "/task").listFiles();
+        if ((tasks == null) || (tasks.length == 0)) {
+            return children;
+        }
+        if (!new File(tasks[0], "children").exists()) {
+            final File[] processes = ProcessSampler.PROC.listFiles((dir, name) -> name.matches("[0-9]+"));
+            for (final File process : processes == null ? new File[0] : processes) {
+                try {
+                    final String stat = new String(Files.readAllBytes(new File(process, "stat").toPath()),
+                            StandardCharsets.ISO_8859_1);
+                    // pid (comm) state ppid ..., comm possibly holding spaces
+                    final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                    if (Long.parseLong(fields[1]) == pid) {
+                        children.add(Long.parseLong(process.getName()));
+                    }
+                } catch (final IOException | RuntimeException e) {
+                    // ended process
+                }
+            }
+            return children;
+        }
+        for (final File task : tasks) {
+            try {
+                final String line = new String(Files.readAllBytes(new File(task, "children").toPath()),
+                        StandardCharsets.ISO_8859_1).trim();
+                if (!line.isEmpty()) {
+                    for (final String child : line.split("\\s+")) {
+                        children.add(Long.parseLong(child));
+                    }
+                }
+            } catch (final IOException | NumberFormatException e) {
+                // ended task
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @return the resident memory (kB) and the number of threads of the process, or null if it ended
+     */
+    private static long[] readStatus(final long pid) {
+        try {
+            final long[] status = new long[2];
+            for (final String line : Files.readAllLines(new File(ProcessSampler.PROC, pid + "/status").toPath(),
+                    StandardCharsets.ISO_8859_1)) {
+                if (line.startsWith("VmRSS:")) {
+                    status[0] = Long.parseLong(line.substring(6).replace("kB", "").trim());
+                } else if (line.startsWith("Threads:")) {
+                    status[1] = Long.parseLong(line.substring(8).trim());
+                }
+            }
+            return status;
+        } catch (final IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the CPU time (ticks) and the bytes read and written by the process, or null if it ended
+     */
+    private static long[] readUsage(final long pid) {
+        try {
+            final String stat = new String(
+                    Files.readAllBytes(new File(ProcessSampler.PROC, pid + "/stat").toPath()),
+                    StandardCharsets.ISO_8859_1);
+            // the command name, in parentheses, may hold spaces: fields 14 and 15 (utime, stime) after it
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            final long[] usage = { Long.parseLong(fields[11]) + Long.parseLong(fields[12]), 0 };
+            // not readable for the processes of other users
+            final File io = new File(ProcessSampler.PROC, pid + "/io");
+            if (io.canRead()) {
+                for (final String line : Files.readAllLines(io.toPath(), StandardCharsets.ISO_8859_1)) {
+                    if (line.startsWith("rchar:") || line.startsWith("wchar:")) {
+                        usage[1] += Long.parseLong(line.substring(6).trim());
+                    }
+                }
+            }
+            return usage;
+        } catch (final IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private long total(final int index) {
+        long total = 0;
+        for (final Entry<Long, long[]> usage : this.usages.entrySet()) {
+            final long[] offset = this.offsets.get(usage.getKey());
+            total += usage.getValue()[index] - (offset == null ? 0 : offset[index]);
+        }
+        return total;
+    }
+
+    /**
+     * @return the CPU time of the case (s)
+     */
+    synchronized double getCpuSeconds() {
+        return this.total(0) / ProcessSampler.TICKS_PER_SECOND;
+    }
+
+    /**
+     * @return the peak resident memory of the case (MB)
+     */
+    synchronized double getRssPeakMb() {
+        return this.rssPeak / 1024.;
+    }
+
+    /**
+     * @return the last sample, as {@code rss_mb=812.3 rss_peak_mb=901.0 cpu_s=35.20 io_mb=120.4 threads=4}
+     */
+    synchronized String format() {
+        return String.format(Locale.ROOT, "rss_mb=%.1f rss_peak_mb=%.1f cpu_s=%.2f io_mb=%.1f threads=%d",
+                this.rss / 1024., this.getRssPeakMb(), this.getCpuSeconds(), this.total(1) / 1048576.,
+                this.threads);
+    }
+
+    /**
+     * Write the totals of the case.
+     *
+     * @param dir
+     *            the directory of the case.
+     * @param wallMillis
+     *            the wall clock time of the run (ms).
+     */
+    synchronized void writeSummary(final File dir, final long wallMillis) {
+        final Map<String, Double> summary = new LinkedHashMap<>();
+        summary.put(ProcessSampler.CPU_OUTPUT, this.getCpuSeconds());
+        summary.put(ProcessSampler.RSS_PEAK_OUTPUT, this.getRssPeakMb());
+        summary.put(ProcessSampler.IO_OUTPUT, this.total(1) / 1048576.);
+        summary.put(ProcessSampler.WALL_OUTPUT, wallMillis / 1000.);
+        try (final Writer out = Files.newBufferedWriter(new File(dir, ProcessSampler.SUMMARY_FILE).toPath(),
+                StandardCharsets.ISO_8859_1)) {
+            for (final Entry<String, Double> entry : summary.entrySet()) {
+                out.write(entry.getKey() + '=' + String.format(Locale.ROOT, "%.3f", entry.getValue()) + '\n');
+            }
+        } catch (final IOException e) {
+            System.err.println("Unable to write the resources of the case: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add the totals of a case to its outputs.
+     *
+     * @param dir
+     *            the directory of the results of the case.
+     * @param outputs
+     *            the outputs of the case.
+     */
+    static void readSummary(final File dir, final Map<String, Object> outputs) {
+        final File file = new File(dir, ProcessSampler.SUMMARY_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        final Properties summary = new Properties();
+        try (final Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.ISO_8859_1)) {
+            summary.load(in);
+        } catch (final IOException e) {
+            return;
+        }
+        for (final String key : summary.stringPropertyNames()) {
+            try {
+                outputs.put(key, Double.parseDouble(summary.getProperty(key)));
+            } catch (final NumberFormatException e) {
+                outputs.put(key, Double.NaN);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Retention of the files written by a case: only the listing, the files written by the dataset ({@code OPTI SORT},
+ * {@code OPTI SAUV}, {@code @EXCEL1}), which hold the outputs read by {@link Cast3mIOPlugin#readOutput(File)}, and
+ * the files matching the {@value #KEEP_PROPERTY} system property (comma separated glob patterns, relative to the
+ * directory of the case) are kept. The other files written by the run (scratch and trace files) are deleted, or
+ * compressed in place when the {@value #MODE_PROPERTY} system property is {@code gzip}, the retention being disabled
+ * when it is not set. The input files are always kept.<br>
+ * The kept files are also listed in the {@value #KEEP_FILE} file, for {@code Cast3m.sh} running Cast3m in a scratch
+ * directory ({@code CAST3M_SCRATCH}): it copies back only these files, its first line being the mode.
+ */
+final class ResultRetention {
+
+    static final String MODE_PROPERTY = "cast3m.retention";
+
+    static final String KEEP_PROPERTY = "cast3m.keep";
+
+    static final String DELETE = "delete";
+
+    static final String GZIP = "gzip";
+
+    /** List of the kept files, in the directory of the case */
+    static final String KEEP_FILE = ".cast3m_keep";
+
+    /** Files of the plugin and of Cast3m.sh, always kept */
+    private static final List<String> KEPT = Arrays.asList(Cast3mIOPlugin.OUTFILE_NAME,
+            Cast3mIOPlugin.OUTFILE_NAME + BlockGzip.SUFFIX,
+            Cast3mIOPlugin.OUTFILE_NAME + BlockGzip.SUFFIX + BlockGzip.INDEX_SUFFIX, ProcessSampler.SUMMARY_FILE,
+            ListingWatchdog.REASON_FILE);
+
+    private final String mode;
+
+    private final List<String> patterns;
+
+    /**
+     * @param mode
+     *            {@value #DELETE} or {@value #GZIP}.
+     * @param patterns
+     *            the glob patterns of the other files kept.
+     */
+    ResultRetention(final String mode, final List<String> patterns) {
+        this.mode = mode;
+        this.patterns = new ArrayList<>(patterns);
+    }
+
+    /**
+     * @return the retention configured by the system properties, or null if it is disabled
+     */
+    static ResultRetention getDefault() {
+        final String mode = System.getProperty(ResultRetention.MODE_PROPERTY);
+        if (mode == null) {
+            return null;
+        }
+        if (!ResultRetention.DELETE.equals(mode) && !ResultRetention.GZIP.equals(mode)) {
+            System.err.println("Unknown " + ResultRetention.MODE_PROPERTY + ": " + mode);
+            return null;
+        }
+        final List<String> patterns = new ArrayList<>();
+        for (final String pattern : System.getProperty(ResultRetention.KEEP_PROPERTY, "").split(",")) {
+            if (!pattern.trim().isEmpty()) {
+                patterns.add(pattern.trim());
+            }
+        }
+        return new ResultRetention(mode, patterns);
+    }
+
+    /**
+     * Find the files to keep, before the run.
+     *
+     * @param dir
+     *            the directory of the case, holding the compiled dataset.
+     * @return the input files, relative to the directory
+     * @throws IOException
+     *             if the directory cannot be read or the list of the kept files cannot be written
+     */
+    Set<String> prepare(final File dir) throws IOException {
+        final Set<String> inputs = ResultRetention.list(dir);
+        final List<String> kept = new ArrayList<>();
+        kept.add(this.mode);
+        kept.addAll(ResultRetention.KEPT);
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            final DGibiGraph graph = new DGibiGraph(DGibiHelper.filterFiles(".dgibi", files));
+            for (final File root : graph.getRoots()) {
+                // the names of the files as read by readOutput
+                for (final String output : new DGibiIndex(graph.expand(root)).getOutputFiles()) {
+                    if (!kept.contains(output)) {
+                        kept.add(output);
+                        if (output.indexOf('.') < 0) {
+                            // SORT 'VTK' and SORT 'AVS' add the extension
+                            kept.add(output + ".*");
+                        }
+                    }
+                }
+            }
+        }
+        kept.addAll(this.patterns);
+        Files.write(new File(dir, ResultRetention.KEEP_FILE).toPath(), kept, StandardCharsets.ISO_8859_1);
+        return inputs;
+    }
+
+    /**
+     * Delete or compress the files written by the run which are not kept.
+     *
+     * @param dir
+     *            the directory of the case.
+     * @param inputs
+     *            the input files, given by {@link #prepare(File)}.
+     * @return the number of files deleted or compressed
+     */
+    int apply(final File dir, final Set<String> inputs) {
+        final File keepFile = new File(dir, ResultRetention.KEEP_FILE);
+        final List<PathMatcher> kept = new ArrayList<>();
+        int count = 0;
+        try {
+            final List<String> lines = Files.readAllLines(keepFile.toPath(), StandardCharsets.ISO_8859_1);
+            for (final String pattern : lines.subList(1, lines.size())) {
+                kept.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            }
+            for (final String name : ResultRetention.list(dir)) {
+                if (inputs.contains(name) || name.equals(ResultRetention.KEEP_FILE)
+                        || ResultRetention.matches(kept, name)) {
+                    continue;
+                }
+                final File file = new File(dir, name);
+                if (ResultRetention.GZIP.equals(this.mode)) {
+                    if (name.endsWith(".gz")) {
+                        continue;
+                    }
+                    try (final OutputStream out = new GZIPOutputStream(
+                            Files.newOutputStream(new File(dir, name + ".gz").toPath()))) {
+                        Files.copy(file.toPath(), out);
+                    }
+                }
+                Files.delete(file.toPath());
+                count++;
+            }
+        } catch (final IOException | RuntimeException e) {
+            System.err.println("Unable to clean the files of the case: " + e.getMessage());
+        } finally {
+            keepFile.delete();
+        }
+        return count;
+    }
+
+    private static boolean matches(final List<PathMatcher> matchers, final String name) {
+        final Path path = new File(name).toPath();
+        for (final PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the regular files of the directory and its sub-directories, relative to it
+     */
+    private static Set<String> list(final File dir) throws IOException {
+        final Path root = dir.toPath();
+        try (final Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+        }
+    }
+}
@@ -0,0 +1,538 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Objects of a formatted SAUV file ({@code OPTI SAUV FORM 'file'; SAUV ...;}), read through a memory mapping of the
+ * file: opening it only indexes its piles and the names of their objects, an object being decoded when it is read.
+ * <br>
+ * The file is a series of records ({@code ENREGISTREMENT DE TYPE n}), the objects of each type being saved in a pile
+ * ({@code PILE NUMERO n}): the names of the named objects (8 per line), their indices in the pile (10 per line), then
+ * the objects. The integers are written 10 per line on 8 characters, the reals 3 per line.<br>
+ * The objects decoded are the ones holding values: {@code FLOTTANT} and {@code ENTIER} as a {@link Double},
+ * {@code LISTREEL} as a {@code double[]}, {@code MOT} as a {@link String}, {@code TABLE} as a map of its entries by
+ * key, decoded the same way, and as a map of {@code double[]}:
+ * <ul>
+ * <li>{@code CHPOINT}: the values of each component, by component name, the values of the sub-fields (one per
+ * support) being appended. Each object is written as: the number of sub-fields, of components, the harmonic type and
+ * the number of attributes; the support, a 0 and the number of components of each sub-field; the names of the
+ * components; their harmonics; the nature and the title lines; the attributes; then for each sub-field the number of
+ * nodes and of components followed by the values, component after component;</li>
+ * <li>{@code EVOLUTIO}: the abscissae and the ordinates of the curves, {@code X} and {@code Y} for the first one,
+ * {@code X2} and {@code Y2} for the second one... Each object is written as the count of its integers, then the
+ * integers: the number of curves, and the indices of the {@code LISTREEL} of the abscissae and of the ordinates of
+ * each curve.</li>
+ * </ul>
+ * The other objects ({@code MCHAML}, {@code MAILLAGE}...) are indexed but not decoded: their values can be saved
+ * through a {@code LISTREEL} ({@code EXTR}, {@code PROG}) or a {@code TABLE}. Binary SAUV files are not supported.
+ */
+final class SauvFile implements Closeable {
+
+    static final int PILE_CHPOINT = 2;
+
+    static final int PILE_TABLE = 10;
+
+    static final int PILE_EVOLUTIO = 15;
+
+    static final int PILE_LISTREEL = 18;
+
+    static final int PILE_FLOTTANT = 25;
+
+    static final int PILE_ENTIER = 26;
+
+    static final int PILE_MOT = 27;
+
+    private static final String RECORD = "ENREGISTREMENT DE TYPE";
+
+    private static final Pattern PILE = Pattern
+            .compile("PILE NUMERO\\s*(\\d+)\\s*NBRE OBJETS NOMMES\\s*(\\d+)\\s*NBRE OBJETS\\s*(\\d+)");
+
+    /** Record ending the file */
+    private static final int END_RECORD = 5;
+
+    /** Record holding a pile */
+    private static final int PILE_RECORD = 2;
+
+    private static final int INTEGERS_PER_LINE = 10;
+
+    private static final int INTEGER_WIDTH = 8;
+
+    private static final int REALS_PER_LINE = 3;
+
+    private static final int NAMES_PER_LINE = 8;
+
+    /** Size of the mapped regions, a file larger than 2 GB needing several ones */
+    private static final int REGION_BITS = 30;
+
+    /**
+     * Reader of the object at the reading position.
+     */
+    @FunctionalInterface
+    private interface ObjectReader {
+
+        /**
+         * @return the object, or null if it is only skipped
+         */
+        Object read() throws IOException;
+    }
+
+    /**
+     * Pile of a type of objects.
+     */
+    private static final class Pile {
+
+        private final int objects;
+
+        /** Start of the objects, in the file */
+        private final long start;
+
+        /** Start of each object, found on first access for the piles holding one object after the other */
+        private long[] offsets;
+
+        /** Values of the pile, for the piles holding all their values at once */
+        private Object[] values;
+
+        Pile(final int objects, final long start) {
+            this.objects = objects;
+            this.start = start;
+        }
+    }
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer[] regions;
+
+    private final long size;
+
+    /** Pile and index (from 1) of the named objects, by upper case name */
+    private final Map<String, int[]> names = new LinkedHashMap<>();
+
+    private final Map<Integer, Pile> piles = new HashMap<>();
+
+    /** Reading position */
+    private long position;
+
+    private SauvFile(final FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        final int count = (int) ((this.size >>> SauvFile.REGION_BITS) + 1);
+        this.regions = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final long start = (long) i << SauvFile.REGION_BITS;
+            this.regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(1L << SauvFile.REGION_BITS, this.size - start));
+        }
+    }
+
+    /**
+     * @param file
+     *            a formatted SAUV file.
+     * @return the file, indexed
+     * @throws IOException
+     *             if the file cannot be read, or is not a formatted SAUV file
+     */
+    static SauvFile open(final File file) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final SauvFile sauv = new SauvFile(channel);
+            sauv.index();
+            return sauv;
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping is released with the buffers
+        this.channel.close();
+    }
+
+    /**
+     * @return the names of the named objects, in upper case
+     */
+    Set<String> getNames() {
+        return this.names.keySet();
+    }
+
+    /**
+     * @param name
+     *            the name of an object, case insensitive.
+     * @return the number of the pile of the object, or -1 if there is no object with this name
+     */
+    int getPile(final String name) {
+        final int[] reference = this.names.get(name.toUpperCase(Locale.ROOT));
+        return reference == null ? -1 : reference[0];
+    }
+
+    /**
+     * @param name
+     *            the name of an object, case insensitive.
+     * @return the value of the object (see the class comment), or null if it is not found or not decoded
+     * @throws IOException
+     *             if the object cannot be decoded
+     */
+    Object read(final String name) throws IOException {
+        final int[] reference = this.names.get(name.toUpperCase(Locale.ROOT));
+        return reference == null ? null : this.read(reference[0], reference[1], true);
+    }
+
+    /**
+     * Scan the lines of the file for its records, decoding only the headers of the piles.
+     */
+    private void index() throws IOException {
+        this.position = 0;
+        if (!this.isRecord()) {
+            throw new IOException("not a formatted SAUV file, see OPTI SAUV FORM");
+        }
+        while (this.position < this.size) {
+            final String record = this.readLine().trim();
+            final int type = Integer.parseInt(record.substring(SauvFile.RECORD.length()).trim());
+            if (type == SauvFile.END_RECORD) {
+                break;
+            }
+            if (type == SauvFile.PILE_RECORD) {
+                final Matcher matcher = SauvFile.PILE.matcher(this.readLine());
+                if (!matcher.find()) {
+                    throw new IOException("invalid pile header at " + this.position);
+                }
+                final int pile = Integer.parseInt(matcher.group(1));
+                final int named = Integer.parseInt(matcher.group(2));
+                final int objects = Integer.parseInt(matcher.group(3));
+                final List<String> objectNames = this.readNames(named);
+                final long[] indices = this.readIntegers(named);
+                for (int i = 0; i < named; i++) {
+                    this.names.put(objectNames.get(i), new int[] { pile, (int) indices[i] });
+                }
+                this.piles.put(pile, new Pile(objects, this.position));
+            }
+            // content of the record, decoded on demand
+            while ((this.position < this.size) && !this.isRecord()) {
+                this.skipLine();
+            }
+        }
+    }
+
+    /**
+     * @param top
+     *            false for the values of a table, whose tables are not decoded.
+     */
+    private Object read(final int pileNumber, final int index, final boolean top) throws IOException {
+        final Pile pile = this.piles.get(pileNumber);
+        if ((pile == null) || (index < 1)) {
+            return null;
+        }
+        switch (pileNumber) {
+        case PILE_FLOTTANT:
+        case PILE_ENTIER:
+        case PILE_MOT:
+            if (pile.values == null) {
+                this.position = pile.start;
+                pile.values = pileNumber == SauvFile.PILE_MOT ? this.readWords() : this.readNumbers(pileNumber);
+            }
+            return index <= pile.values.length ? pile.values[index - 1] : null;
+        case PILE_LISTREEL:
+            if (!this.seek(pile, index, SauvFile.REALS_PER_LINE)) {
+                return null;
+            }
+            return this.readReals((int) this.readIntegers(1)[0]);
+        case PILE_CHPOINT:
+            if (!this.seek(pile, index, () -> this.readChpoint(false))) {
+                return null;
+            }
+            return this.readChpoint(true);
+        case PILE_EVOLUTIO:
+            if (!this.seek(pile, index, SauvFile.INTEGERS_PER_LINE)) {
+                return null;
+            }
+            final long[] curves = this.readIntegers((int) this.readIntegers(1)[0]);
+            final Map<String, Object> evolution = new LinkedHashMap<>();
+            // number of curves, then the abscissae and the ordinates of each curve
+            for (int i = 0; (i < curves[0]) && (((2 * i) + 2) < curves.length); i++) {
+                final String suffix = i == 0 ? "" : Integer.toString(i + 1);
+                evolution.put("X" + suffix, this.read(SauvFile.PILE_LISTREEL, (int) curves[(2 * i) + 1], false));
+                evolution.put("Y" + suffix, this.read(SauvFile.PILE_LISTREEL, (int) curves[(2 * i) + 2], false));
+            }
+            return evolution;
+        case PILE_TABLE:
+            if (!top || !this.seek(pile, index, SauvFile.INTEGERS_PER_LINE)) {
+                return null;
+            }
+            final long[] entries = this.readIntegers((int) this.readIntegers(1)[0]);
+            final Map<String, Object> table = new LinkedHashMap<>();
+            // key pile, key index, value pile, value index
+            for (int i = 0; (i + 3) < entries.length; i += 4) {
+                final Object key = this.read((int) entries[i], (int) entries[i + 1], false);
+                if (key != null) {
+                    final String text = key instanceof Double && (((Double) key) == Math.rint((Double) key))
+                            ? Long.toString(((Double) key).longValue())
+                            : key.toString();
+                    table.put(text, this.read((int) entries[i + 2], (int) entries[i + 3], false));
+                }
+            }
+            return table;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Move to an object of a pile holding a count of values followed by the values, for each object.
+     *
+     * @param perLine
+     *            the number of values per line.
+     * @return false if the pile has no such object
+     */
+    private boolean seek(final Pile pile, final int index, final int perLine) throws IOException {
+        return this.seek(pile, index, () -> {
+            this.skipLines(this.readIntegers(1)[0], perLine);
+            return null;
+        });
+    }
+
+    /**
+     * Move to an object of a pile.
+     *
+     * @param skip
+     *            skips an object of the pile.
+     * @return false if the pile has no such object
+     */
+    private boolean seek(final Pile pile, final int index, final ObjectReader skip) throws IOException {
+        if (index > pile.objects) {
+            return false;
+        }
+        if (pile.offsets == null) {
+            pile.offsets = new long[pile.objects];
+            this.position = pile.start;
+            for (int i = 0; i < pile.objects; i++) {
+                pile.offsets[i] = this.position;
+                skip.read();
+            }
+        }
+        this.position = pile.offsets[index - 1];
+        return true;
+    }
+
+    /**
+     * CHPOINT object, see the class comment.
+     *
+     * @param decode
+     *            false to skip the values.
+     * @return the values by component, or null if they are skipped
+     */
+    private Map<String, Object> readChpoint(final boolean decode) throws IOException {
+        // sub-fields, components, harmonic type, attributes
+        final long[] header = this.readIntegers(4);
+        this.readIntegers(3 * (int) header[0]);
+        final List<String> components = this.readComponents((int) header[1]);
+        this.readIntegers((int) header[1]);
+        // nature and title
+        this.skipLine();
+        this.skipLine();
+        this.readIntegers((int) header[3]);
+
+        final Map<String, Object> values = new LinkedHashMap<>();
+        int first = 0;
+        for (int sub = 0; sub < header[0]; sub++) {
+            final long[] size = this.readIntegers(2);
+            final int nodes = (int) size[0];
+            if (!decode) {
+                this.skipLines(size[0] * size[1], SauvFile.REALS_PER_LINE);
+                continue;
+            }
+            final double[] reals = this.readReals(nodes * (int) size[1]);
+            for (int c = 0; c < size[1]; c++) {
+                final String name = (first + c) < components.size() ? components.get(first + c) : "C" + (c + 1);
+                final double[] previous = (double[]) values.get(name);
+                final double[] component = previous == null ? new double[nodes]
+                        : Arrays.copyOf(previous, previous.length + nodes);
+                System.arraycopy(reals, c * nodes, component, component.length - nodes, nodes);
+                values.put(name, component);
+            }
+            first += (int) size[1];
+        }
+        return decode ? values : null;
+    }
+
+    /**
+     * FLOTTANT or ENTIER pile: the count of the values, then the values.
+     */
+    private Object[] readNumbers(final int pileNumber) throws IOException {
+        final int count = (int) this.readIntegers(1)[0];
+        final Object[] values = new Object[count];
+        if (pileNumber == SauvFile.PILE_FLOTTANT) {
+            final double[] reals = this.readReals(count);
+            for (int i = 0; i < count; i++) {
+                values[i] = reals[i];
+            }
+        } else {
+            final long[] integers = this.readIntegers(count);
+            for (int i = 0; i < count; i++) {
+                values[i] = (double) integers[i];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * MOT pile: the length of the text and the count of the words, the text, then the end of each word in the text.
+     */
+    private Object[] readWords() throws IOException {
+        final long[] header = this.readIntegers(2);
+        final StringBuilder text = new StringBuilder();
+        while ((text.length() < header[0]) && (this.position < this.size)) {
+            text.append(this.readLine());
+        }
+        final long[] ends = this.readIntegers((int) header[1]);
+        final Object[] words = new Object[ends.length];
+        int start = 0;
+        for (int i = 0; i < ends.length; i++) {
+            final int end = (int) Math.min(ends[i], text.length());
+            words[i] = text.substring(Math.min(start, end), end).trim();
+            start = end;
+        }
+        return words;
+    }
+
+    /**
+     * @return the given number of blank separated names of components, on one line or more
+     */
+    private List<String> readComponents(final int count) throws IOException {
+        final List<String> result = new ArrayList<>(count);
+        while (result.size() < count) {
+            for (final String word : this.readLine().trim().split("\\s+")) {
+                if (!word.isEmpty() && (result.size() < count)) {
+                    result.add(word.toUpperCase(Locale.ROOT));
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<String> readNames(final int count) throws IOException {
+        final List<String> result = new ArrayList<>(count);
+        while (result.size() < count) {
+            final String line = this.readLine();
+            // (8(1X,A8))
+            for (int i = 0; (i < SauvFile.NAMES_PER_LINE) && (result.size() < count); i++) {
+                final int start = Math.min((9 * i) + 1, line.length());
+                result.add(line.substring(start, Math.min(start + 8, line.length())).trim()
+                        .toUpperCase(Locale.ROOT));
+            }
+        }
+        return result;
+    }
+
+    private long[] readIntegers(final int count) throws IOException {
+        final long[] result = new long[count];
+        int read = 0;
+        while (read < count) {
+            final String line = this.readLine();
+            // (10I8)
+            for (int start = 0; (start < line.length()) && (read < count); start += SauvFile.INTEGER_WIDTH) {
+                final String field = line.substring(start, Math.min(start + SauvFile.INTEGER_WIDTH, line.length()))
+                        .trim();
+                if (!field.isEmpty()) {
+                    result[read++] = Long.parseLong(field);
+                }
+            }
+        }
+        return result;
+    }
+
+    private double[] readReals(final int count) throws IOException {
+        final double[] result = new double[count];
+        int read = 0;
+        while (read < count) {
+            // Fortran may write the exponent with a D
+            final String line = this.readLine().replace('D', 'E').replace('d', 'e');
+            for (final String field : line.trim().split("\\s+")) {
+                if (!field.isEmpty() && (read < count)) {
+                    result[read++] = Double.parseDouble(field);
+                }
+            }
+        }
+        return result;
+    }
+
+    private byte get(final long offset) {
+        return this.regions[(int) (offset >>> SauvFile.REGION_BITS)]
+                .get((int) (offset & ((1L << SauvFile.REGION_BITS) - 1)));
+    }
+
+    /**
+     * @return true if the line at the reading position starts a record
+     */
+    private boolean isRecord() {
+        long offset = this.position;
+        while ((offset < this.size) && (this.get(offset) == ' ')) {
+            offset++;
+        }
+        if ((offset + SauvFile.RECORD.length()) > this.size) {
+            return false;
+        }
+        for (int i = 0; i < SauvFile.RECORD.length(); i++) {
+            if (this.get(offset + i) != SauvFile.RECORD.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readLine() throws IOException {
+        if (this.position >= this.size) {
+            throw new IOException("unexpected end of the SAUV file");
+        }
+        final StringBuilder line = new StringBuilder(80);
+        while (this.position < this.size) {
+            final byte b = this.get(this.position++);
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.append((char) (b & 0xff));
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Skip the lines of the given number of values.
+     */
+    private void skipLines(final long count, final int perLine) {
+        for (long line = 0; line < ((count + perLine) - 1) / perLine; line++) {
+            this.skipLine();
+        }
+    }
+
+    private void skipLine() {
+        while ((this.position < this.size) && (this.get(this.position++) != '\n')) {
+            // next byte
+        }
+    }
+}
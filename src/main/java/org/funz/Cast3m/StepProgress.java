@@ -0,0 +1,244 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.funz.Cast3m.GibianeLexer.Statement;
+
+/**
+ * Progress of a PASAPAS run, read from the time step lines of its listing: step number, physical time, time step
+ * and number of iterations. The simulated time per second of run is smoothed over the dates at which the lines were
+ * read, which gives the remaining time up to the final time of the dataset ({@code TEMPS_CALCULES}): the lines are
+ * read by bursts, all the steps written since the previous read having the same date.<br>
+ * {@link #format(long)} gives the progress as space separated {@code key=value} pairs, for the console and for the
+ * tools reading it.
+ */
+class StepProgress implements Consumer<String> {
+
+    private static final Pattern STEP_PATTERN = Pattern.compile("PAS\\s*#\\s*(\\d+)");
+
+    private static final Pattern TIME_PATTERN = Pattern.compile(ListingTail.TIME_PATTERN);
+
+    private static final Pattern ITERATIONS_PATTERN = Pattern.compile("ITER[A-Z]*\\s*[=:]?\\s*(\\d+)",
+            Pattern.CASE_INSENSITIVE);
+
+    /** Weight of the last step in the smoothed rate */
+    private static final double SMOOTHING = 0.3;
+
+    private final double finalTime;
+
+    private int step = -1;
+
+    private double time = Double.NaN;
+
+    private double timeStep = Double.NaN;
+
+    private int iterations = -1;
+
+    /** Smoothed physical time per second of run */
+    private double rate = Double.NaN;
+
+    /** Smoothed rate up to the date of the sample */
+    private double sampleRate = Double.NaN;
+
+    /** Physical time of the last step read before the current date */
+    private double sampleTime = Double.NaN;
+
+    /** Date of the sample (ms), or -1 */
+    private long sampleDate = -1;
+
+    /** Date of the last timed step (ms), or -1 */
+    private long lastDate = -1;
+
+    /**
+     * @param finalTime
+     *            the final time of the run, or NaN if it is not known.
+     */
+    StepProgress(final double finalTime) {
+        this.finalTime = finalTime;
+    }
+
+    /**
+     * @param dir
+     *            the directory of the case.
+     * @return the progress of the case, its final time being read from its dataset
+     */
+    static StepProgress forCase(final File dir) {
+        final File[] files = dir == null ? null : dir.listFiles();
+        double finalTime = Double.NaN;
+        if (files != null) {
+            final DGibiGraph graph = new DGibiGraph(DGibiHelper.filterFiles(".dgibi", files));
+            for (final File root : graph.getRoots()) {
+                final double time = StepProgress.readFinalTime(graph.expand(root));
+                if (!Double.isNaN(time)) {
+                    finalTime = time;
+                }
+            }
+        }
+        return new StepProgress(finalTime);
+    }
+
+    /**
+     * @param statements
+     *            the statements of the dataset.
+     * @return the last time of {@code TEMPS_CALCULES} ({@code tab . 'TEMPS_CALCULES' = PROG ...;}, directly or
+     *         through a variable), or NaN if it is not found
+     */
+    static double readFinalTime(final List<Statement> statements) {
+        // last value of the PROG assigned to each variable
+        final Map<String, Double> progs = new HashMap<>();
+        double finalTime = Double.NaN;
+        for (final Statement statement : statements) {
+            if (statement.isOperator(1, "=") && statement.isKeyword(2, "prog")) {
+                progs.put(statement.getToken(0).toLowerCase(Locale.ROOT), StepProgress.maxNumber(statement, 3));
+            } else if (statement.isOperator(1, ".") && statement.isOperator(3, "=")
+                    && (statement.getType(2) == GibianeLexer.STRING)
+                    && statement.getToken(2).trim().equalsIgnoreCase("TEMPS_CALCULES") && (statement.size() > 4)) {
+                final Double value = statement.isKeyword(4, "prog") ? StepProgress.maxNumber(statement, 5)
+                        : progs.get(statement.getToken(4).toLowerCase(Locale.ROOT));
+                if (value != null) {
+                    finalTime = value;
+                }
+            }
+        }
+        return finalTime;
+    }
+
+    private static double maxNumber(final Statement statement, final int start) {
+        double max = Double.NaN;
+        for (int i = start; i < statement.size(); i++) {
+            if (statement.getType(i) == GibianeLexer.NUMBER) {
+                final double value = StepProgress.parse(statement.getToken(i));
+                if (!(value <= max)) {
+                    max = value;
+                }
+            }
+        }
+        return max;
+    }
+
+    private static double parse(final String number) {
+        try {
+            return Double.parseDouble(number.replace('D', 'E').replace('d', 'e'));
+        } catch (final NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public void accept(final String line) {
+        this.accept(line, System.currentTimeMillis());
+    }
+
+    /**
+     * @param line
+     *            a new line of the listing.
+     * @param now
+     *            the current date (ms).
+     */
+    void accept(final String line, final long now) {
+        final Matcher step = StepProgress.STEP_PATTERN.matcher(line);
+        if (step.find()) {
+            this.step = Integer.parseInt(step.group(1));
+            this.iterations = -1;
+            final Matcher time = StepProgress.TIME_PATTERN.matcher(line);
+            if (time.find()) {
+                this.time(StepProgress.parse(time.group(1)), now);
+            }
+        }
+        // the iterations may be on the step line or on the following ones
+        if (this.step >= 0) {
+            final Matcher iterations = StepProgress.ITERATIONS_PATTERN.matcher(line);
+            if (iterations.find()) {
+                this.iterations = Integer.parseInt(iterations.group(1));
+            }
+        }
+    }
+
+    private void time(final double newTime, final long now) {
+        if (Double.isNaN(newTime)) {
+            return;
+        }
+        if (!Double.isNaN(this.time)) {
+            this.timeStep = newTime - this.time;
+        }
+        if (now != this.lastDate) {
+            // all the steps of the previous date were read
+            this.sampleRate = this.rate;
+            this.sampleTime = this.time;
+            this.sampleDate = this.lastDate;
+        }
+        this.time = newTime;
+        this.lastDate = now;
+        if ((this.sampleDate >= 0) && (now > this.sampleDate) && (newTime > this.sampleTime)) {
+            // rate of the current date, up to this step
+            final double dateRate = (newTime - this.sampleTime) / ((now - this.sampleDate) / 1000.);
+            this.rate = Double.isNaN(this.sampleRate) ? dateRate
+                    : (StepProgress.SMOOTHING * dateRate) + ((1 - StepProgress.SMOOTHING) * this.sampleRate);
+        }
+    }
+
+    /**
+     * @return true if a time step line was read
+     */
+    boolean hasStep() {
+        return this.step >= 0;
+    }
+
+    /**
+     * @return the estimated remaining time of the run (s), or NaN if it is not known
+     */
+    double getRemainingSeconds() {
+        if (Double.isNaN(this.finalTime) || Double.isNaN(this.time) || !(this.rate > 0)) {
+            return Double.NaN;
+        }
+        return Math.max(0, this.finalTime - this.time) / this.rate;
+    }
+
+    /**
+     * @param now
+     *            the current date (ms).
+     * @return the progress, as {@code step=12 time=0.12 dt=0.01 iter=3 progress=0.12 rate=0.0041 eta=215}, the
+     *         unknown values being left out
+     */
+    String format(final long now) {
+        final StringBuilder text = new StringBuilder("step=").append(this.step);
+        StepProgress.append(text, "time", this.time);
+        StepProgress.append(text, "dt", this.timeStep);
+        if (this.iterations >= 0) {
+            text.append(" iter=").append(this.iterations);
+        }
+        if (!Double.isNaN(this.finalTime) && !Double.isNaN(this.time) && (this.finalTime > 0)) {
+            StepProgress.append(text, "progress", Math.min(1, this.time / this.finalTime));
+        }
+        StepProgress.append(text, "rate", this.rate);
+        final double remaining = this.getRemainingSeconds();
+        if (!Double.isNaN(remaining)) {
+            // the run did not write a step since the last estimate
+            final double elapsed = this.lastDate >= 0 ? (now - this.lastDate) / 1000. : 0;
+            text.append(" eta=").append(Math.round(Math.max(0, remaining - elapsed)));
+        }
+        return text.toString();
+    }
+
+    private static void append(final StringBuilder text, final String key, final double value) {
+        if (!Double.isNaN(value)) {
+            text.append(' ').append(key).append('=').append(String.format(Locale.ROOT, "%.4g", value));
+        }
+    }
+}
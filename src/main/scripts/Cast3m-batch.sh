@@ -0,0 +1,45 @@
+#!/bin/bash
+
+# Run several compiled datasets (one per case directory) in a single castem20 process:
+#   Cast3m-batch.sh case1/deck.dgibi case2/deck.dgibi ...
+# Each case gets its own castem.out and output files, as after a run of Cast3m.sh in its directory.
+
+if [ $# -lt 1 ] ; then
+  echo "Usage: $0 deck.dgibi..."
+  exit 1
+fi
+
+JAR=${CAST3M_PLUGIN_JAR:-`dirname $0`/../plugins/io/Cast3m.ioplugin.jar}
+driver="batch.dgibi"
+listing="batch.out"
+
+# listing_tail, exit_code and setup_threads
+. `dirname $0`/Cast3m-env.sh
+
+for deck in "$@" ; do
+  tr -d '\r' < $deck > $deck.nor
+  mv $deck.nor $deck
+done
+
+java -cp $JAR org.funz.Cast3m.DGibiBatch write $driver "$@" || exit 1
+
+# same cores, slot and threads as a job of Cast3m.sh
+setup_threads "$@"
+
+nice -5 $PIN castem20 $NCPU $driver > $listing &
+
+PID_CAST3M=$!
+echo $PID_CAST3M >> PID
+wait $PID_CAST3M
+rm -f PID
+
+if [[ ! -f $listing ]]; then
+  echo "No output file!"
+  exit 666
+fi
+
+java -cp $JAR org.funz.Cast3m.DGibiBatch split $listing "$@" || exit 1
+
+EXIT_CODE=`exit_code`
+echo "Exit code: $EXIT_CODE"
+exit $EXIT_CODE
@@ -0,0 +1,114 @@
+#!/bin/bash
+
+# Functions shared by Cast3m.sh and Cast3m-batch.sh, sourced with the listing of the run in $listing
+
+# End of the listing: the last members of the compressed listing, found with its index
+listing_tail() {
+  if [ -f $listing.gz.idx ] ; then
+    START=`awk '{ c[NR] = $1; u[NR] = $2 } END { s = 0; for (i = NR - 1; i >= 1; i--) if (u[NR] - u[i] >= 65536) { s = c[i]; break } print s }' $listing.gz.idx`
+    tail -c +$((START + 1)) $listing.gz | gzip -dc 2>/dev/null | tail -n $1
+  else
+    tail -n $1 $listing
+  fi
+}
+
+# Get the exit code (4 lines before end of file)
+exit_code() {
+  listing_tail 4 | head -n 1 | sed 's/\*//g' | cut -f2 -d ":" | sed 's/ //g'
+}
+
+# Cores, slot, CPU set and thread count of a job, for the datasets given (the first NCPU found is used): sets PIN,
+# the taskset prefix of the castem20 command, and NCPU, its -NCPU option, and exports the thread counts of the
+# libraries
+setup_threads() {
+  local deck="$*"
+  # Number of cores of this calculator (CAST3M_CORES to override), restricted to the CPUs we may run on
+  CPUS=(`grep Cpus_allowed_list /proc/self/status 2>/dev/null | cut -f2 | tr ',' '\n' | awk -F- '{ if ($2 == "") print $1; else for (i = $1; i <= $2; i++) print i }'`)
+  if [ ${#CPUS[@]} -eq 0 ] ; then
+    CPUS=(`seq 0 $((\`getconf _NPROCESSORS_ONLN 2>/dev/null || echo 1\` - 1))`)
+  fi
+  CORES=${CAST3M_CORES:-${#CPUS[@]}}
+  if [ $CORES -gt ${#CPUS[@]} ] ; then
+    CORES=${#CPUS[@]}
+  fi
+
+  # Concurrent Cast3m jobs on this node: each running job holds a slot directory with its PID (mkdir is atomic), the
+  # slots left by killed jobs being freed. With CAST3M_JOBS, the node has this fixed number of slots, each one owning
+  # its own share of the CPUs, derived from the slot index only, so that the CPU sets of the jobs never overlap.
+  # Otherwise there is a slot per core and the jobs are not pinned, their thread count being the cores divided by the
+  # running jobs.
+  SLOTS=${CAST3M_SLOTS_DIR:-${TMPDIR:-/tmp}/cast3m-slots-`id -u`}
+  MAX_JOBS=$CORES
+  FIXED=""
+  if [[ "$CAST3M_JOBS" =~ ^[0-9]+$ ]] && [ $CAST3M_JOBS -ge 1 ] ; then
+    FIXED=true
+    if [ $CAST3M_JOBS -lt $CORES ] ; then
+      MAX_JOBS=$CAST3M_JOBS
+    fi
+  fi
+  SLOT=""
+  SLOT_DIR=""
+  RUNNING=0
+  if mkdir -p $SLOTS ; then
+    for ((slot = 0; slot < MAX_JOBS; slot++)) ; do
+      STALE=`cat $SLOTS/$slot/pid 2>/dev/null`
+      if [ -n "$STALE" ] && ! kill -0 $STALE 2>/dev/null && mv $SLOTS/$slot $SLOTS/.stale.$$ 2>/dev/null ; then
+        # rename is atomic: only one job frees a stale slot, and gives it back if another job took it meanwhile
+        if [ "`cat $SLOTS/.stale.$$/pid 2>/dev/null`" = "$STALE" ] ; then
+          rm -rf $SLOTS/.stale.$$
+        else
+          mv -T $SLOTS/.stale.$$ $SLOTS/$slot 2>/dev/null
+        fi
+      fi
+      if [ -z "$SLOT_DIR" ] && mkdir $SLOTS/$slot 2>/dev/null ; then
+        echo $$ > $SLOTS/$slot/pid
+        SLOT=$slot
+        SLOT_DIR=$SLOTS/$slot
+        trap "rm -rf $SLOT_DIR" EXIT
+      fi
+      if [ -d $SLOTS/$slot ] ; then
+        RUNNING=$((RUNNING + 1))
+      fi
+    done
+  fi
+  if [ $RUNNING -lt 1 ] ; then
+    RUNNING=1
+  fi
+  echo "cores: $CORES, concurrent jobs: $RUNNING"
+
+  # Pin each job to the CPU set of its slot when the slots are fixed
+  PIN=""
+  SHARE=$CORES
+  THREADS=$((CORES / RUNNING))
+  if [ -n "$FIXED" ] ; then
+    SHARE=$((CORES / MAX_JOBS))
+    THREADS=$SHARE
+    if [ -n "$SLOT_DIR" ] && [ "$CAST3M_PIN" != "false" ] && command -v taskset > /dev/null ; then
+      SET=`echo ${CPUS[@]:$((SLOT * SHARE)):$SHARE} | tr ' ' ','`
+      PIN="taskset -c $SET"
+      echo "CPU set: $SET"
+    fi
+  fi
+
+  # Threads of this job: NCPU of the deck, otherwise our share of the cores, at most the CPUs it may run on
+  export NCPU=""
+  NCPU_in=`grep -h "NCPU " $deck | sed 's/.*NCPU //' | tr '\n' ' ' | tr -d '\r' | cut -d' ' -f1`
+    echo "parse NCPU "$NCPU_in
+  if ! [[ "$NCPU_in" =~ ^[0-9]+$ ]] || [ $NCPU_in -lt 1 ] ; then
+    NCPU_in=$THREADS
+    if [ $NCPU_in -lt 1 ] ; then
+      NCPU_in=1
+    fi
+  fi
+  if [ $NCPU_in -gt $SHARE ] ; then
+    echo "NCPU $NCPU_in reduced to the $SHARE CPUs of this job"
+    NCPU_in=$SHARE
+  fi
+  export NCPU="-NCPU $NCPU_in"
+  echo "NCPU: "$NCPU
+
+  # Same thread count for the OpenMP and BLAS libraries linked in castem
+  export OMP_NUM_THREADS=$NCPU_in
+  export OPENBLAS_NUM_THREADS=$NCPU_in
+  export MKL_NUM_THREADS=$NCPU_in
+}
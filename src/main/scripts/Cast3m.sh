@@ -5,23 +5,128 @@ mv $1.nor $1
 
 #FICH=$(basename $1)
 listing="castem.out"
+# reason of the stop of a run by the watchdog of the calculator plugin
+watchdog="WATCHDOG"
+rm -f $watchdog
 
-export NCPU=""
-NCPU_in=`grep "NCPU " $1 | sed 's/.*NCPU //' | tr '\n' ' ' | tr -d '\r' | cut -d' ' -f1`
-  echo "parse NCPU "$NCPU_in
-if [ ! "$NCPU_in""zz" = "zz" ] ; then
-  export NCPU="-NCPU $NCPU_in"
+# Compressed listing (CAST3M_COMPRESS=true): castem.out.gz, made of gzip members of 1 MB at most, and its index
+# castem.out.gz.idx, the end offset of each member in the compressed file and in the listing
+JAR=${CAST3M_PLUGIN_JAR:-`dirname $0`/../plugins/io/Cast3m.ioplugin.jar}
+rm -f $listing.gz $listing.gz.idx
+
+# listing_tail, exit_code and setup_threads
+. `dirname $0`/Cast3m-env.sh
+
+# Run cache (CAST3M_RUN_CACHE=true): the results of a run are stored under the hash of the input files (variables
+# already substituted) and of the Cast3m install, then restored instead of running the same case again. The least
+# recently used runs are evicted above CAST3M_RUN_CACHE_SIZE MB. The install is identified by CAST3M_VERSION when
+# set, otherwise by the content of the resolved castem20 and of the bin and lib* directories of CAST3M_HOME (default:
+# the parent of the directory of the resolved castem20). This hash is computed once, and kept in the run cache under
+# the path and modification time of castem20 and of these directories.
+RUN_CACHE=${CAST3M_RUN_CACHE_DIR:-$HOME/.cache/funz/Cast3m/runs}
+RUN_CACHE_SIZE=${CAST3M_RUN_CACHE_SIZE:-1024}
+RUN_KEY=""
+if [ "$CAST3M_RUN_CACHE" = "true" ] && command -v sha256sum > /dev/null && CASTEM=`command -v castem20` ; then
+  if [ -n "$CAST3M_VERSION" ] ; then
+    INSTALL_KEY="version: $CAST3M_VERSION"
+  else
+    CASTEM=`readlink -f $CASTEM`
+    CASTEM_HOME=${CAST3M_HOME:-`dirname \`dirname $CASTEM\``}
+    STAMP=`stat -c '%n %Y' $CASTEM $CASTEM_HOME/bin $CASTEM_HOME/lib* 2>/dev/null | sha256sum | cut -d' ' -f1`
+    INSTALL_FILE=$RUN_CACHE/.install.$STAMP
+    INSTALL_KEY=`cat $INSTALL_FILE 2>/dev/null`
+    if [ -z "$INSTALL_KEY" ] ; then
+      INSTALL_KEY=`find $CASTEM $CASTEM_HOME/bin $CASTEM_HOME/lib* -type f -print0 2>/dev/null | sort -z \
+        | xargs -0 sha256sum | sha256sum`
+      mkdir -p $RUN_CACHE && echo "$INSTALL_KEY" > $INSTALL_FILE.$$ && mv $INSTALL_FILE.$$ $INSTALL_FILE
+    fi
+  fi
+  RUN_KEY=`( echo "castem20: $INSTALL_KEY"
+             find . -type f ! -name PID ! -name "$listing*" ! -name '.cast3m_*' -print0 | sort -z | xargs -0 sha256sum
+           ) | sha256sum | cut -d' ' -f1`
+  if [ -f $RUN_CACHE/$RUN_KEY.tar.gz ] && tar xzf $RUN_CACHE/$RUN_KEY.tar.gz ; then
+    touch $RUN_CACHE/$RUN_KEY.tar.gz
+    echo "Results restored from run cache: $RUN_KEY"
+    EXIT_CODE=`exit_code`
+    echo "Exit code: $EXIT_CODE"
+    exit $EXIT_CODE
+  fi
+  touch .cast3m_start
 fi
-echo "NCPU: "$NCPU
 
-nice -5 castem20 $1 > $listing &
+setup_threads $1
+
+# Scratch directory (CAST3M_SCRATCH, e.g. a tmpfs or a local disk): Cast3m runs there on a copy of the inputs, the
+# listing staying in the case directory. The new files listed in .cast3m_keep by the calculator plugin (all of them
+# without it) are copied back, the others being deleted with the scratch directory, or archived in scratch.tar.gz
+# when the first line of .cast3m_keep is gzip.
+CASE_DIR=`pwd`
+SCRATCH=""
+if [ -n "$CAST3M_SCRATCH" ] && mkdir -p $CAST3M_SCRATCH && SCRATCH=`mktemp -d $CAST3M_SCRATCH/cast3m.XXXXXX` ; then
+  if cp -a . $SCRATCH/ && touch $SCRATCH/.cast3m_scratch && cd $SCRATCH ; then
+    trap "rm -rf $SLOT_DIR $SCRATCH" EXIT
+    echo "Scratch directory: $SCRATCH"
+  else
+    rm -rf $SCRATCH
+    SCRATCH=""
+  fi
+fi
+
+# Copy the new files of the scratch directory back to the case directory
+copy_back() {
+  if [ -f $CASE_DIR/.cast3m_keep ] ; then
+    ( shopt -s globstar nullglob
+      tail -n +2 $CASE_DIR/.cast3m_keep | while IFS= read -r pattern ; do
+        for f in $pattern ; do
+          if [ -f "$f" ] && [ "$f" -nt .cast3m_scratch ] ; then
+            echo "$f"
+          fi
+        done
+      done ) | sort -u > .cast3m_kept
+    tar cf - -T .cast3m_kept | tar xf - -C $CASE_DIR
+    if [ "`head -n 1 $CASE_DIR/.cast3m_keep`" = "gzip" ] ; then
+      find . -type f -newer .cast3m_scratch ! -name '.cast3m_*' | sed 's#^\./##' | grep -vxF -f .cast3m_kept \
+        > .cast3m_rest
+      if [ -s .cast3m_rest ] ; then
+        tar czf $CASE_DIR/scratch.tar.gz -T .cast3m_rest
+      fi
+    fi
+  else
+    find . -type f -newer .cast3m_scratch ! -name '.cast3m_*' | tar cf - -T - | tar xf - -C $CASE_DIR
+  fi
+}
+
+COMPRESSOR=""
+if [ "$CAST3M_COMPRESS" = "true" ] && [ -e $JAR ] && mkfifo $CASE_DIR/.cast3m_listing ; then
+  rm -f $CASE_DIR/$listing
+  java -cp $JAR org.funz.Cast3m.BlockGzip $CASE_DIR/$listing.gz < $CASE_DIR/.cast3m_listing &
+  COMPRESSOR=$!
+  nice -5 $PIN castem20 $NCPU $1 > $CASE_DIR/.cast3m_listing &
+else
+  nice -5 $PIN castem20 $NCPU $1 > $CASE_DIR/$listing &
+fi
 
 PID_CAST3M=$!
-echo $PID_CAST3M >> PID
+echo $PID_CAST3M >> $CASE_DIR/PID
 wait $PID_CAST3M
-rm -f PID
+rm -f $CASE_DIR/PID
+if [ -n "$COMPRESSOR" ] ; then
+  wait $COMPRESSOR
+  rm -f $CASE_DIR/.cast3m_listing
+fi
+
+if [ -n "$SCRATCH" ] ; then
+  copy_back
+  cd $CASE_DIR
+  rm -rf $SCRATCH
+fi
 
-if [[ ! -f $listing ]]; then
+if [[ -f $watchdog ]]; then
+  echo "Stopped by watchdog: `cat $watchdog`"
+  exit 124
+fi
+
+if [[ ! -f $listing ]] && [[ ! -f $listing.gz ]]; then
   echo "No output file!"
   exit 666
 fi
@@ -29,7 +134,24 @@ fi
 # cleanup null chars
 #cat $listing | tr -d '\000' > $listing
 
-# Get the exit code (4 lines before end of file)
-EXIT_CODE=`tail -n 4 $listing | head -n 1 | sed 's/\*//g' | cut -f2 -d ":" | sed 's/ //g'`
+EXIT_CODE=`exit_code`
 echo "Exit code: $EXIT_CODE"
+
+# Store the files written by a successful run, then evict the oldest runs
+if [ -n "$RUN_KEY" ] ; then
+  if [ "$EXIT_CODE" = "0" ] && mkdir -p $RUN_CACHE ; then
+    find . -type f -newer .cast3m_start ! -name PID ! -name '.cast3m_*' | tar czf $RUN_CACHE/.$RUN_KEY.$$ -T - \
+      && mv $RUN_CACHE/.$RUN_KEY.$$ $RUN_CACHE/$RUN_KEY.tar.gz
+    rm -f $RUN_CACHE/.$RUN_KEY.$$
+    TOTAL=`du -sk $RUN_CACHE | cut -f1`
+    for entry in `ls -tr $RUN_CACHE/*.tar.gz 2>/dev/null` ; do
+      if [ $TOTAL -le $((RUN_CACHE_SIZE * 1024)) ] ; then
+        break
+      fi
+      TOTAL=$((TOTAL - `du -k $entry | cut -f1`))
+      rm -f $entry
+    done
+  fi
+  rm -f .cast3m_start
+fi
 exit $EXIT_CODE
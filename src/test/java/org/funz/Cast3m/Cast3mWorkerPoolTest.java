@@ -0,0 +1,106 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class Cast3mWorkerPoolTest {
+    final String path = "./src/test/java/org/funz/Cast3m/";
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(Cast3mWorkerPoolTest.class.getName());
+    }
+
+    private File writeCase(final File dir, final String name, final String... lines) throws IOException {
+        final File caseDir = new File(dir, name);
+        caseDir.mkdir();
+        final File deck = new File(caseDir, "deck.dgibi");
+        Files.write(deck.toPath(), Arrays.asList(lines));
+        return deck;
+    }
+
+    private static List<String> run(final Cast3mWorkerPool pool, final File deck, final int expected)
+            throws IOException {
+        final Cast3mWorker worker = pool.acquire();
+        final File listing = new File(deck.getParentFile(), "castem.out");
+        final int exit = worker.run(deck, listing);
+        pool.release(worker, exit == 0);
+        Assert.assertEquals(expected, exit);
+        return Files.readAllLines(listing.toPath(), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public final void standInTest() throws IOException {
+        final File dir = this.temp.newFolder("cases");
+        final Cast3mWorkerPool pool = new Cast3mWorkerPool(
+                Arrays.asList("bash", new File(this.path + "castem-standin.sh").getAbsolutePath()), 1, 2, 1024);
+        try {
+            final List<String> listing1 = Cast3mWorkerPoolTest.run(pool,
+                    this.writeCase(dir, "case1", "x = 1.;", "MESS 'x=' x;", "FIN;"), 0);
+            Assert.assertEquals(" $ x = 1.;", listing1.get(0));
+            Assert.assertEquals(" $ MESS 'x=' x;", listing1.get(1));
+            Assert.assertEquals(" x=  ", listing1.get(2).substring(0, 5));
+            final String pid = listing1.get(2);
+
+            // same warm process
+            final List<String> listing2 = Cast3mWorkerPoolTest.run(pool,
+                    this.writeCase(dir, "case2", "MESS 'y=' y;", "FIN;"), 0);
+            Assert.assertEquals(pid.replace('x', 'y'), listing2.get(1));
+            // recycled after 2 cases, the replacement being started at once
+            Assert.assertEquals(2, pool.getStarted());
+
+            final List<String> listing3 = Cast3mWorkerPoolTest.run(pool,
+                    this.writeCase(dir, "case3", "MESS 'x=' x;", "FIN;"), 0);
+            Assert.assertNotEquals(pid, listing3.get(1));
+            Assert.assertEquals(2, pool.getStarted());
+
+            // a dead worker fails the case, and is replaced
+            Cast3mWorkerPoolTest.run(pool, this.writeCase(dir, "case4", "x = 1.;", "CRASH;", "MESS 'x=' x;"),
+                    Cast3mWorker.DIED);
+            final List<String> listing5 = Cast3mWorkerPoolTest.run(pool,
+                    this.writeCase(dir, "case5", "MESS 'x=' x;"), 0);
+            Assert.assertEquals(2, listing5.size());
+            Assert.assertEquals(3, pool.getStarted());
+
+            // an error in Cast3m fails the case although it goes up to its end, and the worker is replaced
+            final List<String> listing6 = Cast3mWorkerPoolTest.run(pool,
+                    this.writeCase(dir, "case6", "ERR;", "MESS 'x=' x;"), Cast3mWorker.ERROR);
+            Assert.assertEquals(4, listing6.size());
+            Assert.assertEquals(4, pool.getStarted());
+            Cast3mWorkerPoolTest.run(pool, this.writeCase(dir, "case7", "MESS 'x=' x;"), 0);
+            Assert.assertEquals(4, pool.getStarted());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public final void errorLevelTest() {
+        Assert.assertEquals(0, Cast3mWorker.getErrorLevel("$ * ***** ERREUR : 2 in a comment"));
+        Assert.assertEquals(0, Cast3mWorker.getErrorLevel("x=  1.0000"));
+        Assert.assertEquals(Cast3mWorker.ERROR, Cast3mWorker.getErrorLevel("***** ERREUR  21 ***** dans l'operateur"));
+        Assert.assertEquals(0, Cast3mWorker.getErrorLevel("***** ARRET DU PROGRAMME NIVEAU D'ERREUR:   0 *****"));
+        Assert.assertEquals(2, Cast3mWorker.getErrorLevel("***** ARRET DU PROGRAMME NIVEAU D'ERREUR:   2 *****"));
+    }
+}
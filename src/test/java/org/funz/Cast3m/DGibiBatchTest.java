@@ -0,0 +1,98 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DGibiBatchTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(DGibiBatchTest.class.getName());
+    }
+
+    private static List<String> read(final File f) throws IOException {
+        return Files.readAllLines(f.toPath(), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public final void writeTest() throws IOException {
+        final File batch = this.temp.newFolder();
+        final File case1 = new File(batch, "case1");
+        final File case2 = new File(batch, "case2");
+        case1.mkdir();
+        case2.mkdir();
+        final File deck1 = new File(case1, "deck.dgibi");
+        final File deck2 = new File(case2, "deck.dgibi");
+        Files.write(deck1.toPath(), Arrays.asList("OPTI DONN 'mesh.dgibi';", "x = 1.;", "MESS 'x=' x;",
+                "OPTI SORT 'res.csv';", "SORT 'EXCE' ta;", "@EXCEL1 ev 'ev.csv'; fin;"));
+        Files.write(deck2.toPath(), Arrays.asList("x = 2.;", "MESS 'x=' x;", "FIN;"));
+
+        final File driver = new File(batch, "batch.dgibi");
+        DGibiBatch.write(driver, Arrays.asList(new DGibiBatch.Point(deck1), new DGibiBatch.Point(deck2)));
+        Assert.assertEquals(Arrays.asList("MESS 'FUNZ_POINT_BEGIN 0';", "OPTI DONN 'case1/mesh.dgibi';", "x = 1.;",
+                "MESS 'x=' x;", "OPTI SORT 'case1/res.csv';", "SORT 'EXCE' ta;", "@EXCEL1 ev 'case1/ev.csv'; ",
+                "MESS 'FUNZ_POINT_END 0';", "MESS 'FUNZ_POINT_BEGIN 1';", "x = 2.;", "MESS 'x=' x;", "",
+                "MESS 'FUNZ_POINT_END 1';", "FIN;"), DGibiBatchTest.read(driver));
+
+        // one dataset, one directory and some variables per point
+        final DGibiBatch.Point point = new DGibiBatch.Point(deck1, batch, Collections.singletonMap("y", "3."));
+        DGibiBatch.write(driver, Arrays.asList(point));
+        final List<String> lines = DGibiBatchTest.read(driver);
+        Assert.assertEquals("y = 3.;", lines.get(1));
+        Assert.assertEquals("OPTI DONN 'case1/mesh.dgibi';", lines.get(2));
+        Assert.assertEquals("OPTI SORT 'res.csv';", lines.get(5));
+    }
+
+    @Test
+    public final void splitTest() throws IOException {
+        final File batch = this.temp.newFolder();
+        final File case1 = new File(batch, "case1");
+        final File case2 = new File(batch, "case2");
+        final File case3 = new File(batch, "case3");
+        case1.mkdir();
+        case2.mkdir();
+        case3.mkdir();
+        final File case4 = new File(batch, "case4");
+        case4.mkdir();
+        // the second point fails and the batch goes on, then stops during the third one
+        final File listing = new File(batch, "castem.out");
+        Files.write(listing.toPath(), Arrays.asList("CASTEM banner", " $ MESS 'FUNZ_POINT_BEGIN 0';",
+                " FUNZ_POINT_BEGIN 0", " x=  1.0", " $ MESS 'FUNZ_POINT_END 0';", " FUNZ_POINT_END 0",
+                " $ MESS 'FUNZ_POINT_BEGIN 1';", " FUNZ_POINT_BEGIN 1", " ***** ERREUR  21 ***** dans l'operateur ERR",
+                " FUNZ_POINT_END 1", " FUNZ_POINT_BEGIN 2", " x=  3.0", " $ FIN;", " * ERREUR : 5 *", "", "", ""));
+
+        DGibiBatch.split(listing, Arrays.asList(new DGibiBatch.Point(new File(case1, "deck.dgibi")),
+                new DGibiBatch.Point(new File(case2, "deck.dgibi")),
+                new DGibiBatch.Point(new File(case3, "deck.dgibi")),
+                new DGibiBatch.Point(new File(case4, "deck.dgibi"))), "castem.out");
+        Assert.assertEquals(Arrays.asList("CASTEM banner", " x=  1.0", " ***** ERREUR : 0 *****", "", "", ""),
+                DGibiBatchTest.read(new File(case1, "castem.out")));
+        Assert.assertEquals(Arrays.asList("CASTEM banner", " ***** ERREUR  21 ***** dans l'operateur ERR",
+                " ***** ERREUR : 1 *****", "", "", ""), DGibiBatchTest.read(new File(case2, "castem.out")));
+        Assert.assertEquals(Arrays.asList("CASTEM banner", " x=  3.0", " $ FIN;", " * ERREUR : 5 *", "", "", ""),
+                DGibiBatchTest.read(new File(case3, "castem.out")));
+        Assert.assertFalse(new File(case4, "castem.out").exists());
+    }
+}
@@ -0,0 +1,114 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DGibiCheckpointTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(DGibiCheckpointTest.class.getName());
+    }
+
+    private static List<String> deck(final String young) {
+        return Arrays.asList("OPTI DIME 2 ELEM QUA4;", "p1 = 0. 0.; p2 = 1. 0.;", "l1 = DROI 10 p1 p2;",
+                "DEBP carre x*FLOTTANT;", "y = x * x;", "FINP y;", "mo = MODE l1 MECANIQUE;",
+                "ma = MATE mo 'YOUN' " + young + ";", "MESS 'young=' " + young + ";", "FIN;");
+    }
+
+    @Test
+    public final void prefixTest() {
+        final List<GibianeLexer.Statement> deck1 = GibianeLexer.parse(DGibiCheckpointTest.deck("2.E11"));
+        final List<GibianeLexer.Statement> deck2 = GibianeLexer.parse(DGibiCheckpointTest.deck("1.E11"));
+        // up to the material
+        Assert.assertEquals(8, DGibiCheckpoint.prefixLength(deck2, deck1));
+        // never the output of the case
+        Assert.assertEquals(9, DGibiCheckpoint.prefixLength(deck1, deck1));
+        // not inside a procedure
+        Assert.assertEquals(4, DGibiCheckpoint.prefixLength(deck2,
+                GibianeLexer.parse(Arrays.asList("OPTI DIME 2 ELEM QUA4;", "p1 = 0. 0.; p2 = 1. 0.;",
+                        "l1 = DROI 10 p1 p2;", "DEBP carre x*FLOTTANT;", "y = x * x * x;"))));
+        // before an output
+        Assert.assertEquals(1, DGibiCheckpoint.prefixLength(
+                GibianeLexer.parse(Arrays.asList("OPTI DIME 2;", "OPTI SORT 'mesh.avs';", "x = 1.;")),
+                GibianeLexer.parse(Arrays.asList("OPTI DIME 2;", "OPTI SORT 'mesh.avs';", "x = 2.;"))));
+        Assert.assertEquals(0, DGibiCheckpoint.prefixLength(deck2, GibianeLexer.parse(Arrays.asList("x = 1.;"))));
+        // the rest starts on its own line
+        Assert.assertEquals(1, DGibiCheckpoint.prefixLength(
+                GibianeLexer.parse(Arrays.asList("x = 1.;", "y = 1.; z = 1.;")),
+                GibianeLexer.parse(Arrays.asList("x = 1.;", "y = 1.; z = 2.;"))));
+    }
+
+    @Test
+    public final void applyTest() throws IOException {
+        final File cache = this.temp.newFolder();
+        // stand-in for castem20: saves a state, and counts the runs of the prefix
+        final File runs = new File(cache, "runs");
+        final DGibiCheckpoint checkpoint = new DGibiCheckpoint(cache, Arrays.asList("bash", "-c",
+                "grep -q '^SAUV;' $0 && echo x >> " + runs.getAbsolutePath() + " && echo state > "
+                        + DGibiCheckpoint.CHECKPOINT_FILE),
+                2048);
+
+        // the cases of a study, and a case of another study
+        final File study = this.temp.newFolder();
+        final File[] cases = new File[4];
+        for (int i = 0; i < cases.length; i++) {
+            final File parent = i < 3 ? study : this.temp.newFolder();
+            cases[i] = new File(Files.createDirectory(new File(parent, "case" + i).toPath()).toFile(), "deck.dgibi");
+            Files.write(cases[i].toPath(), DGibiCheckpointTest.deck((i + 1) + ".E11"),
+                    StandardCharsets.ISO_8859_1);
+        }
+
+        // first case: nothing to compare with
+        Assert.assertFalse(checkpoint.apply(cases[0]));
+        Assert.assertFalse(runs.exists());
+
+        Assert.assertTrue(checkpoint.apply(cases[1]));
+        final List<String> rewritten = Files.readAllLines(cases[1].toPath(), StandardCharsets.ISO_8859_1);
+        Assert.assertTrue(rewritten.get(0).startsWith("* Funz checkpoint "));
+        Assert.assertEquals(Arrays.asList("OPTI DIME 2 ELEM QUA4;", "OPTI REST '.cast3m_checkpoint.sauv';", "REST;",
+                "ma = MATE mo 'YOUN' 2.E11;", "MESS 'young=' 2.E11;", "FIN;"), rewritten.subList(1, 7));
+        final File state = new File(cases[1].getParentFile(), DGibiCheckpoint.CHECKPOINT_FILE);
+        Assert.assertEquals("state",
+                new String(Files.readAllBytes(state.toPath()), StandardCharsets.US_ASCII).trim());
+        Assert.assertFalse(new File(cases[1].getParentFile(), ".cast3m_prefix.dgibi").exists());
+
+        // the state is reused
+        Assert.assertTrue(checkpoint.apply(cases[2]));
+        Assert.assertEquals(1, Files.readAllLines(runs.toPath()).size());
+        Assert.assertEquals(rewritten.get(0), Files.readAllLines(cases[2].toPath()).get(0));
+
+        // the case keeps its dataset
+        DGibiCheckpoint.clean(cases[2]);
+        Assert.assertFalse(new File(cases[2].getParentFile(), DGibiCheckpoint.CHECKPOINT_FILE).exists());
+        Assert.assertEquals(DGibiCheckpointTest.deck("3.E11"),
+                Files.readAllLines(cases[2].toPath(), StandardCharsets.ISO_8859_1));
+        Assert.assertEquals(1, cases[2].getParentFile().list().length);
+
+        // another study with the same dataset name: not compared with this one
+        Assert.assertFalse(checkpoint.apply(cases[3]));
+        Assert.assertEquals(DGibiCheckpointTest.deck("4.E11"),
+                Files.readAllLines(cases[3].toPath(), StandardCharsets.ISO_8859_1));
+    }
+}
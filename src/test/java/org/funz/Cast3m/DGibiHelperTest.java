@@ -15,6 +15,9 @@
 package org.funz.Cast3m;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -23,11 +26,16 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class DGibiHelperTest {
     final String path = "./src/test/java/org/funz/Cast3m/";
 
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
     public static void main(final String args[]) {
         org.junit.runner.JUnitCore.main(DGibiHelperTest.class.getName());
     }
@@ -86,6 +94,24 @@ public class DGibiHelperTest {
         Assert.assertEquals(exp, res);
     }
 
+    @Test
+    public final void filterSortFieldsTest() {
+        final Map<String, String> map = DGibiHelper.filterSortFields(Arrays.asList("OPTI SORT 'resu';",
+                "SORT 'VTK' mail 'mesh' chp1 'DEPL' chp2 'SMXX' 'TEMPS' t1;", "OPTI SORT 'temp.avs';",
+                "SORT 'AVS' mail chpt;", "OPTI SORT;", "SORT 'VTK' mail chp3 'T';"));
+        Assert.assertEquals(Arrays.asList("DEPL", "SMXX", "chpt"), new ArrayList<>(map.keySet()));
+        Assert.assertEquals("resu", map.get("DEPL"));
+        Assert.assertEquals("temp.avs", map.get("chpt"));
+    }
+
+    @Test
+    public final void filterSauvTest() {
+        final Map<String, String> map = DGibiHelper.filterSauv(Arrays.asList("SAUV a;", "OPTI SAUV FORM 'Resu.sauv';",
+                "SAUV FORM ta x;"));
+        Assert.assertEquals(Arrays.asList("ta", "x"), new ArrayList<>(map.keySet()));
+        Assert.assertEquals("resu.sauv", map.get("x"));
+    }
+
     @Test
     public final void filterTableTest() {
         final List<String> lines = DGibiHelper.loadDgibi(this.path + "table.dgibi");
@@ -179,4 +205,176 @@ public class DGibiHelperTest {
         final Double expected = -0.0514286;
         Assert.assertEquals(res, expected);
     }
+
+    @Test
+    public final void scanListingTest() {
+        final Map<String, Double> res = new ListingScanner(Arrays.asList("dep_P2", "DEP_P1", "unknown"))
+                .scan(new File(this.path + "poutre.out"));
+        Assert.assertEquals(1, res.size());
+        Assert.assertEquals(Double.valueOf(-0.0514286), res.get("dep_P2"));
+    }
+
+    @Test
+    public final void scanSeveralScalarsTest() {
+        final ListingScanner scanner = new ListingScanner(Arrays.asList("var", "var2", "a"));
+        final Map<String, Double> res = new HashMap<>();
+        for (final String line : new String[] { "$ var=1.0;", "xvar=2.5 VAR2= -1.E-3; a=4;", "var=7" }) {
+            scanner.accept(line, res);
+        }
+        Assert.assertEquals(Double.valueOf(2.5), res.get("var"));
+        Assert.assertEquals(Double.valueOf(-1.E-3), res.get("var2"));
+        Assert.assertNull(res.get("a"));
+    }
+
+    @Test
+    public final void csvColumnsTest() {
+        final CsvColumns columns = CsvColumns.read(new File(this.path + "res.csv"));
+        Assert.assertEquals(18, columns.getHeader().length);
+        Assert.assertEquals(18, columns.getColumns().length);
+        Assert.assertEquals("TEMPS", columns.getHeader()[0]);
+        Assert.assertEquals("REACT", columns.getHeader()[17]);
+
+        // Same values as the ones read as text
+        final List<String[]> text = DGibiHelper.readCSV(new File(this.path + "res.csv"));
+        for (int c = 0; c < text.size(); c++) {
+            final double[] expected = Arrays.stream(text.get(c)).skip(1).mapToDouble(Double::parseDouble).toArray();
+            Assert.assertTrue(Arrays.equals(expected, columns.getColumns()[c]));
+        }
+    }
+
+    @Test
+    public final void csvColumnsNoHeaderTest() throws IOException {
+        final CsvColumns columns = CsvColumns.read(new StringReader(" 1.0; ;2.5E-3;\r\n\n-4;;1e400;\n7"));
+        Assert.assertNull(columns.getHeader());
+        Assert.assertEquals(2, columns.getColumns().length);
+        Assert.assertTrue(Arrays.equals(new double[] { 1.0, -4, 7 }, columns.getColumns()[0]));
+        Assert.assertTrue(Arrays.equals(new double[] { 2.5E-3, Double.POSITIVE_INFINITY, Double.NaN },
+                columns.getColumns()[1]));
+    }
+
+    @Test
+    public final void csvColumnByNameTest() throws IOException {
+        final CsvColumns columns = CsvColumns.read(new StringReader("DX1;DX10;T;\n1;2;3;\n"));
+        Assert.assertEquals(1.0, columns.getColumn("DX1")[0], 0.0);
+        Assert.assertEquals(2.0, columns.getColumn("DX10")[0], 0.0);
+        Assert.assertEquals(3.0, columns.getColumn("TEMPS")[0], 0.0);
+        Assert.assertNull(columns.getColumn("DY"));
+    }
+
+    @Test
+    public final void outputCacheTest() throws IOException {
+        final File dir = this.temp.newFolder();
+        final OutputCache cache = new OutputCache(dir, 64);
+        final File f = new File(this.path + "outvar.dgibi");
+        final String key = cache.key(f);
+        Assert.assertEquals(key, cache.key(f));
+        Assert.assertNotEquals(key, cache.key(new File(this.path + "outfilevar.dgibi")));
+        Assert.assertNull(cache.load(key));
+
+        final Map<String, String> outputs = new HashMap<>();
+        outputs.put("var", DGibiHelper.CASE_OUTPUT_KEY);
+        outputs.put("ta", DGibiHelper.FILE_OUTPUT_PREFIX + "var_res.csv");
+        cache.store(key, outputs, new HashMap<File, String>());
+        Assert.assertEquals(outputs, cache.load(key));
+
+        // outdated when a dependency changes
+        final File include = new File(dir, "include.dgibi");
+        Files.write(include.toPath(), Arrays.asList("MESS 'x=' x;"));
+        final Map<File, String> dependencies = new HashMap<>();
+        dependencies.put(include, OutputCache.hash(include));
+        cache.store(key, outputs, dependencies);
+        Assert.assertEquals(outputs, cache.load(key));
+        Files.write(include.toPath(), Arrays.asList("MESS 'y=' y;"));
+        Assert.assertNull(cache.load(key));
+
+        // outdated when a procedure is added next to a dependency
+        dependencies.put(include, OutputCache.hash(include));
+        cache.store(key, outputs, dependencies);
+        Assert.assertEquals(outputs, cache.load(key));
+        Files.write(new File(dir, "post.procedur").toPath(), Arrays.asList("DEBP POST;", "FINP;"));
+        Assert.assertNull(cache.load(key));
+
+        // the same dataset in another directory may include other files
+        final File copy = new File(this.temp.newFolder(), f.getName());
+        Files.copy(f.toPath(), copy.toPath());
+        Assert.assertNotEquals(key, cache.key(copy));
+        Assert.assertFalse(OutputCache.getPluginVersion().isEmpty());
+
+        // without room, only the last stored file is kept
+        final OutputCache small = new OutputCache(dir, 0);
+        final String other = small.key(new File(this.path + "outfilevar.dgibi"));
+        small.store(other, outputs, new HashMap<File, String>());
+        Assert.assertNull(small.load(key));
+        Assert.assertEquals(outputs, small.load(other));
+    }
+
+    @Test
+    public final void filterOptiSortStateTest() {
+        final List<String> lines = Arrays.asList("OPTI SORT 'a.csv';", "SORT 'EXCE' t1;", "OPTI DIME 2;",
+                "x = 1;", "SORT 'EXCE' t2;", "OPTI SORT;", "SORT 'EXCE' t3;", "OPTI SORT 'a.csv';",
+                "SORT 'EXCE' t4;", "OPTI SORT 'b.txt';", "SORT 'CHAI' c1;");
+        final Map<String, String> excel = DGibiHelper.filterSortExcel(lines);
+        Assert.assertEquals(3, excel.size());
+        Assert.assertEquals("a.csv", excel.get("t2"));
+        Assert.assertEquals("a.csv", excel.get("t4"));
+        Assert.assertNull(excel.get("t3"));
+        Assert.assertEquals("b.txt", DGibiHelper.filterSortChai(lines).get("c1"));
+    }
+
+    @Test
+    public final void indexFiltersTest() {
+        final DGibiIndex index = DGibiHelper.index(Arrays.asList("EV1 = EVOL MANU 'TEMPS' lt 'DEPL' ld;",
+                "ex = EXTR ev 'DEPL';", "nom = 'resu';", "NOM2 = nom;", "@EXCEL1 EV1 'ev1.csv';",
+                "@excel1 ex (CHAI nom '_ex.csv');", "Mess 'a=' a;", "MESSAGE 'b=' b;"));
+        Assert.assertEquals(Arrays.asList("TEMPS", "DEPL"), DGibiHelper.filterEvolManu(index, "ev1"));
+        Assert.assertEquals(Arrays.asList("ex"), DGibiHelper.filterExtr(index, "ex"));
+        Assert.assertTrue(DGibiHelper.filterExtr(index, "ex2").isEmpty());
+        Assert.assertEquals(Arrays.asList("a"), DGibiHelper.filterMess(index));
+
+        final Map<String, String> excel1 = DGibiHelper.filterExcel1(index);
+        Assert.assertEquals("ev1.csv", excel1.get("EV1"));
+        Assert.assertEquals("resu_ex.csv", excel1.get("ex"));
+    }
+
+    @Test
+    public final void lexerTest() throws IOException {
+        final List<GibianeLexer.Statement> statements = GibianeLexer.parse(new StringReader(
+                "* comment; MESS 'x=' x;\nMESS 'a;b=' a; OPTI SORT 'f.csv'; * trailing; comment\n"
+                        + "ma = MATE mo 'YOUN' 210e9\n* inner comment\n   'NU' 0.3 ; ta . 'X' = 1.E-3**2;"));
+        Assert.assertEquals(4, statements.size());
+        Assert.assertEquals("MESS 'a;b=' a;", statements.get(0).getText());
+        Assert.assertEquals(3, statements.get(0).size());
+        Assert.assertEquals("a;b=", statements.get(0).getToken(1));
+        Assert.assertEquals(GibianeLexer.STRING, statements.get(0).getType(1));
+        Assert.assertEquals("OPTI SORT 'f.csv';", statements.get(1).getText());
+        Assert.assertEquals("ma = MATE mo 'YOUN' 210e9 'NU' 0.3 ;", statements.get(2).getText());
+        Assert.assertEquals(3, statements.get(2).getLine());
+        Assert.assertEquals(GibianeLexer.NUMBER, statements.get(2).getType(5));
+        Assert.assertTrue(statements.get(3).isOperator(5, "**"));
+        Assert.assertEquals("1.E-3", statements.get(3).getToken(4));
+    }
+
+    @Test
+    public final void graphTest() throws IOException {
+        final File dir = this.temp.newFolder();
+        final File main = new File(dir, "main.dgibi");
+        final File included = new File(dir, "mesh.dgibi");
+        final File procedure = new File(dir, "post.procedur");
+        Files.write(main.toPath(), Arrays.asList("OPTI DONN 'mesh.dgibi';", "OPTI ACQU 'data.txt';",
+                "MESS 'a=' a;", "@POST ta;", "@post ta;", "FIN;"));
+        Files.write(included.toPath(), Arrays.asList("MESS 'b=' b;"));
+        Files.write(procedure.toPath(), Arrays.asList("DEBP POST t*TABLE;", "MESS 'c=' c;", "FINP;"));
+        Files.write(new File(dir, "data.txt").toPath(), Arrays.asList("1 2 3"));
+
+        final DGibiGraph graph = new DGibiGraph(main, included);
+        Assert.assertEquals(Arrays.asList(main), graph.getRoots());
+        Assert.assertEquals(4, graph.getFiles().size());
+        final DGibiIndex index = new DGibiIndex(graph.expand(main));
+        Assert.assertEquals(Arrays.asList("b", "a", "c"), index.getMessVariables());
+
+        // a change of an included file is seen
+        Files.write(included.toPath(), Arrays.asList("MESS 'b=' b;", "MESS 'd=' d;"));
+        Assert.assertEquals(Arrays.asList("b", "d", "a", "c"),
+                new DGibiIndex(new DGibiGraph(main).expand(main)).getMessVariables());
+    }
 }
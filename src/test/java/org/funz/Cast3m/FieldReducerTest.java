@@ -0,0 +1,98 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FieldReducerTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(FieldReducerTest.class.getName());
+    }
+
+    private File write(final String name, final String... lines) throws IOException {
+        final File file = new File(this.temp.newFolder(), name);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.ISO_8859_1);
+        return file;
+    }
+
+    @Test
+    public final void legacyTest() throws IOException {
+        final File file = this.write("resu.vtk", "# vtk DataFile Version 3.0", "Cast3m results",
+                "ASCII", "DATASET UNSTRUCTURED_GRID", "POINTS 3 float", "0 0 0 1 0 0 0 1 0", "CELLS 1 4", "3 0 1 2",
+                "CELL_TYPES 1", "5", "POINT_DATA 3", "SCALARS T float", "LOOKUP_TABLE default", "1.0 4.0 -2.0",
+                "VECTORS DEPL float", "3 4 0", "0 0 1", "0 0 0", "CELL_DATA 1", "SCALARS T float 1",
+                "LOOKUP_TABLE default", "7.5E+00");
+        final Map<String, FieldReducer.Reduction> reductions = FieldReducer.read(file);
+        Assert.assertEquals(Arrays.asList("T", "DEPL", "T_cell"), Arrays.asList(reductions.keySet().toArray()));
+
+        final FieldReducer.Reduction t = reductions.get("T");
+        Assert.assertEquals(-2.0, t.get("min"), 0);
+        Assert.assertEquals(4.0, t.get("max"), 0);
+        Assert.assertEquals(1.0, t.get("mean"), 1e-12);
+        Assert.assertEquals(Math.sqrt(21), t.get("l2"), 1e-12);
+        Assert.assertEquals(1, t.get("argmax"), 0);
+        // norm of the vectors
+        Assert.assertEquals(5.0, reductions.get("DEPL").get("max"), 0);
+        Assert.assertEquals(0.0, reductions.get("DEPL").get("min"), 0);
+        Assert.assertEquals(7.5, reductions.get("T_cell").get("mean"), 0);
+    }
+
+    @Test
+    public final void xmlTest() throws IOException {
+        final File file = this.write("resu.vtu", "<?xml version=\"1.0\"?>",
+                "<VTKFile type=\"UnstructuredGrid\">", "<UnstructuredGrid><Piece NumberOfPoints=\"2\">",
+                "<Points><DataArray NumberOfComponents=\"3\" format=\"ascii\">0 0 0 1 0 0</DataArray></Points>",
+                "<PointData><DataArray Name=\"SMXX\" format=\"ascii\">", "  2.5", "  -1.5", "</DataArray>",
+                "<DataArray Name=\"U\" NumberOfComponents=\"2\" format=\"ascii\">0 1 6 8</DataArray>",
+                "<DataArray Name=\"V\" format=\"binary\">AAAA</DataArray></PointData>",
+                "</Piece></UnstructuredGrid></VTKFile>");
+        final Map<String, FieldReducer.Reduction> reductions = FieldReducer.read(file);
+        Assert.assertEquals(0.5, reductions.get("SMXX").get("mean"), 0);
+        Assert.assertEquals(0, reductions.get("SMXX").get("argmax"), 0);
+        Assert.assertEquals(10.0, reductions.get("U").get("max"), 0);
+        Assert.assertEquals(1, reductions.get("U").get("argmax"), 0);
+        Assert.assertFalse(reductions.containsKey("V"));
+    }
+
+    @Test
+    public final void avsTest() throws IOException {
+        final File file = this.write("resu.avs", "# AVS UCD", "3 1 2 0 0", "1 0. 0. 0.", "2 1. 0. 0.",
+                "5 0. 1. 0.", "1 1 tri 1 2 5", "2 1 1", "UX, m", "UY, m", "1 0.3 0.4", "2 -1. 0.", "5 0. 0.");
+        final Map<String, FieldReducer.Reduction> reductions = FieldReducer.read(file);
+        Assert.assertEquals(-1.0, reductions.get("UX").get("min"), 0);
+        Assert.assertEquals(0.4, reductions.get("UY").get("max"), 0);
+        // all the node data: labels of the nodes
+        Assert.assertEquals(1.0, reductions.get(FieldReducer.NODE_DATA).get("max"), 0);
+        Assert.assertEquals(2, reductions.get(FieldReducer.NODE_DATA).get("argmax"), 0);
+        Assert.assertEquals(file, FieldReducer.resolve(new File(file.getParentFile(), "resu")));
+    }
+
+    @Test
+    public final void truncatedTest() throws IOException {
+        final File file = this.write("resu.vtk", "# vtk DataFile Version 3.0", "", "ASCII",
+                "DATASET UNSTRUCTURED_GRID", "POINT_DATA 4", "SCALARS T float", "LOOKUP_TABLE default", "1 2");
+        Assert.assertEquals(2.0, FieldReducer.read(file).get("T").get("max"), 0);
+    }
+}
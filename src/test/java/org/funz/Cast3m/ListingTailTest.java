@@ -0,0 +1,243 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ListingTailTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(ListingTailTest.class.getName());
+    }
+
+    private static void append(final File f, final String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(f, true)) {
+            out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    @Test
+    public final void incrementalTest() throws IOException {
+        final File f = this.temp.newFile("castem.out");
+        final ListingTail tail = new ListingTail(f);
+        Assert.assertFalse(tail.update());
+
+        ListingTailTest.append(f, "line 1\r\n PAS # 1 TEMPS 0.1\nPAS # 2 T");
+        Assert.assertTrue(tail.update());
+        Assert.assertEquals(" PAS # 1 TEMPS 0.1", tail.getLastStepLine());
+        Assert.assertEquals(3, tail.getLineCount());
+
+        ListingTailTest.append(f, "EMPS 0.2\n ****** ERREUR 5 ******\n");
+        Assert.assertTrue(tail.update());
+        Assert.assertFalse(tail.update());
+        Assert.assertEquals("PAS # 2 TEMPS 0.2", tail.getLastStepLine());
+        Assert.assertEquals(" ****** ERREUR 5 ******", tail.getLastErrorLine());
+        Assert.assertEquals(4, tail.getLineCount());
+    }
+
+    @Test
+    public final void watchdogTest() {
+        final Pattern time = Pattern.compile("TEMPS\\s*=\\s*(\\S+)");
+        final ListingWatchdog stall = new ListingWatchdog(10000, 0, time, 0, null, null);
+        Assert.assertNull(stall.check(100000));
+        stall.accept(" PAS # 1 TEMPS = 0.1", 1000);
+        Assert.assertNull(stall.check(11000));
+        stall.accept(" PAS # 2 TEMPS = 0.2", 11000);
+        Assert.assertNull(stall.check(21000));
+        Assert.assertEquals("no new time step for 10 s", stall.check(21001));
+
+        final ListingWatchdog collapse = new ListingWatchdog(0, 1e-3, time, 0, null, null);
+        collapse.accept(" PAS # 1 TEMPS = 0.1", 0);
+        collapse.accept(" PAS # 2 TEMPS = 0.2", 0);
+        Assert.assertNull(collapse.check(0));
+        collapse.accept(" PAS # 3 TEMPS = 0.2000001", 0);
+        Assert.assertTrue(collapse.check(0).startsWith("time step "));
+
+        final ListingWatchdog errors = new ListingWatchdog(0, 0, time, 2, Pattern.compile("ERREUR"),
+                Pattern.compile("NaN"));
+        errors.accept(" ***** ERREUR 21 *****", 0);
+        Assert.assertNull(errors.check(0));
+        errors.accept(" RESIDU = NaN", 0);
+        Assert.assertEquals("line matches 'NaN': RESIDU = NaN", errors.check(0));
+        errors.accept(" ***** ERREUR 21 *****", 0);
+        Assert.assertEquals("line matches 'NaN': RESIDU = NaN", errors.check(0));
+    }
+
+    @Test
+    public final void watchdogStopTest() throws IOException, InterruptedException {
+        Assume.assumeTrue(ProcessSampler.isSupported());
+        final File dir = this.temp.newFolder("case");
+        // a wrapper script whose children do the work, as castem20
+        final Process process = new ProcessBuilder("sh", "-c", "sleep 60 & sleep 60 & wait").start();
+        try {
+            final long pid = ProcessSampler.getPid(process);
+            Files.write(new File(dir, "PID").toPath(), (pid + "\n").getBytes(StandardCharsets.US_ASCII));
+            final List<Long> pids = new ArrayList<>();
+            for (int i = 0; (i < 100) && (pids.size() < 3); i++) {
+                Thread.sleep(50);
+                pids.clear();
+                ProcessSampler.addTree(pid, pids);
+            }
+            Assert.assertEquals(3, pids.size());
+
+            final ListingWatchdog watchdog = new ListingWatchdog(0, 0, null, 0, null, Pattern.compile("NaN"));
+            watchdog.accept(" RESIDU = NaN", 0);
+            Assert.assertNotNull(watchdog.check(0));
+            Assert.assertTrue(watchdog.stop(dir));
+            process.waitFor();
+            for (final Long child : pids.subList(1, pids.size())) {
+                final File stat = new File("/proc/" + child + "/stat");
+                for (int i = 0; (i < 100) && stat.exists() && !ListingTailTest.isZombie(stat); i++) {
+                    Thread.sleep(50);
+                }
+                Assert.assertTrue("orphan " + child, !stat.exists() || ListingTailTest.isZombie(stat));
+            }
+            Assert.assertTrue(new File(dir, ListingWatchdog.REASON_FILE).isFile());
+        } finally {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static boolean isZombie(final File stat) {
+        try {
+            final String line = new String(Files.readAllBytes(stat.toPath()), StandardCharsets.ISO_8859_1);
+            return line.substring(line.lastIndexOf(')') + 2).startsWith("Z");
+        } catch (final IOException e) {
+            return true;
+        }
+    }
+
+    @Test
+    public final void progressTest() {
+        final StepProgress progress = new StepProgress(1.0);
+        Assert.assertFalse(progress.hasStep());
+        progress.accept(" PAS # 1 TEMPS = 0.1", 0);
+        Assert.assertEquals("step=1 time=0.1000 progress=0.1000", progress.format(0));
+        progress.accept(" PAS # 2 TEMPS = 2.D-1", 10000);
+        progress.accept("  NOMBRE D'ITERATIONS : 3", 10000);
+        // 0.1 per 10 s, 0.8 left
+        Assert.assertEquals("step=2 time=0.2000 dt=0.1000 iter=3 progress=0.2000 rate=0.01000 eta=80",
+                progress.format(10000));
+        Assert.assertEquals(70, Long.parseLong(progress.format(20000).replaceAll(".* eta=", "")));
+        progress.accept(" PAS # 3 TEMPS = 0.4", 20000);
+        // smoothed rate: 0.3 * 0.02 + 0.7 * 0.01
+        Assert.assertEquals(0.6 / 0.013, progress.getRemainingSeconds(), 1e-9);
+
+        final StepProgress unknown = new StepProgress(Double.NaN);
+        unknown.accept(" PAS # 4 TEMPS = 0.1", 0);
+        unknown.accept(" PAS # 5 TEMPS = 0.2", 1000);
+        Assert.assertEquals("step=5 time=0.2000 dt=0.1000 rate=0.1000", unknown.format(1000));
+    }
+
+    @Test
+    public final void progressBurstTest() {
+        // 10 steps of 0.01 per read of the listing, every second
+        final StepProgress progress = new StepProgress(100);
+        int step = 0;
+        for (int read = 1; read <= 3; read++) {
+            for (int i = 0; i < 10; i++) {
+                step++;
+                progress.accept(" PAS # " + step + " TEMPS = " + (step / 100.), read * 1000);
+            }
+        }
+        Assert.assertEquals("step=30 time=0.3000 dt=0.01000 progress=0.003000 rate=0.1000 eta=997",
+                progress.format(3000));
+        Assert.assertEquals(99.7 / 0.1, progress.getRemainingSeconds(), 1e-6);
+    }
+
+    @Test
+    public final void finalTimeTest() {
+        Assert.assertEquals(2.5, StepProgress.readFinalTime(GibianeLexer.parse(Arrays.asList(
+                "tab = TABL;", "tab . 'TEMPS_CALCULES' = PROG 0. PAS 0.5 2.5;"))), 0);
+        Assert.assertEquals(10, StepProgress.readFinalTime(GibianeLexer.parse(Arrays.asList(
+                "lt = PROG 0. 1.D1;", "tab . 'TEMPS_CALCULES' = lt;"))), 0);
+        Assert.assertTrue(Double.isNaN(StepProgress.readFinalTime(GibianeLexer.parse(Arrays.asList(
+                "tab . 'TEMPS_SAUVES' = PROG 1.;")))));
+    }
+
+    @Test
+    public final void compressedTest() throws IOException, InterruptedException {
+        final File dir = this.temp.newFolder();
+        final File listing = new File(dir, "castem.out");
+        final File compressed = new File(dir, "castem.out.gz");
+        final PipedOutputStream castem = new PipedOutputStream();
+        final PipedInputStream in = new PipedInputStream(castem);
+        final IOException[] error = new IOException[1];
+        final Thread compressor = new Thread(() -> {
+            try {
+                BlockGzip.compress(in, compressed);
+            } catch (final IOException e) {
+                error[0] = e;
+            }
+        });
+        compressor.start();
+
+        final ListingTail tail = new ListingTail(listing);
+        castem.write(" PAS # 1 TEMPS 0.1\n x=  1.5\n".getBytes(StandardCharsets.ISO_8859_1));
+        castem.flush();
+        // the member is completed once the listing is idle
+        Thread.sleep(BlockGzip.FLUSH_MILLIS + 500);
+        Assert.assertEquals(compressed, BlockGzip.resolve(listing));
+        Assert.assertTrue(tail.update());
+        Assert.assertEquals(" PAS # 1 TEMPS 0.1", tail.getLastStepLine());
+
+        // a full block, then the end
+        final StringBuilder block = new StringBuilder();
+        while (block.length() <= BlockGzip.BLOCK_SIZE) {
+            block.append(" PAS # 2 TEMPS 0.2\n");
+        }
+        castem.write(block.toString().getBytes(StandardCharsets.ISO_8859_1));
+        castem.write(" ****** ERREUR 5 ******\n".getBytes(StandardCharsets.ISO_8859_1));
+        castem.close();
+        compressor.join();
+        Assert.assertNull(error[0]);
+
+        Assert.assertEquals(3, BlockGzip.readIndex(compressed).size());
+        Assert.assertTrue(tail.update());
+        Assert.assertFalse(tail.update());
+        Assert.assertEquals(" ****** ERREUR 5 ******", tail.getLastErrorLine());
+        final long lines = tail.getLineCount();
+        Assert.assertEquals(3 + (block.length() / 19), lines);
+
+        // a plain gzip file, as read by zcat
+        int size = 0;
+        try (GZIPInputStream gzip = new GZIPInputStream(Files.newInputStream(compressed.toPath()))) {
+            while (gzip.read() >= 0) {
+                size++;
+            }
+        }
+        Assert.assertEquals(BlockGzip.readIndex(compressed).get(2)[1], size);
+
+        Assert.assertEquals(Double.valueOf(1.5),
+                new ListingScanner(Collections.singletonList("x")).scan(compressed).get("x"));
+    }
+}
@@ -0,0 +1,100 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NpyExportTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(NpyExportTest.class.getName());
+    }
+
+    /**
+     * @return the data of the file, after checking its header
+     */
+    private static ByteBuffer read(final File file, final String shape) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        final byte[] magic = new byte[8];
+        buffer.get(magic);
+        Assert.assertArrayEquals(new byte[] { (byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0 }, magic);
+        final byte[] header = new byte[buffer.getShort()];
+        buffer.get(header);
+        Assert.assertEquals(0, buffer.position() % 64);
+        final String dict = new String(header, StandardCharsets.US_ASCII);
+        Assert.assertTrue(dict, dict.startsWith("{'descr': '<f8', 'fortran_order': True, 'shape': " + shape + ", }"));
+        Assert.assertTrue(dict.endsWith("\n"));
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public final void writeTest() throws IOException {
+        final File file = this.temp.newFile("x.npy");
+
+        NpyExport.write(file, new double[] { 1., -2.5, 3e10 });
+        ByteBuffer data = NpyExportTest.read(file, "(3,)");
+        Assert.assertEquals(3 * Double.BYTES, data.remaining());
+        Assert.assertEquals(1., data.getDouble(), 0.);
+        Assert.assertEquals(-2.5, data.getDouble(), 0.);
+        Assert.assertEquals(3e10, data.getDouble(), 0.);
+
+        // one contiguous column after the other, the shorter one padded
+        NpyExport.write(file, new double[][] { { 1., 2., 3. }, { 4., 5. } });
+        data = NpyExportTest.read(file, "(3, 2)");
+        Assert.assertEquals(6 * Double.BYTES, data.remaining());
+        for (final double expected : new double[] { 1., 2., 3., 4., 5. }) {
+            Assert.assertEquals(expected, data.getDouble(), 0.);
+        }
+        Assert.assertTrue(Double.isNaN(data.getDouble()));
+    }
+
+    @Test
+    public final void wrapTest() throws IOException {
+        final File dir = this.temp.newFolder();
+        System.setProperty(NpyExport.PROPERTY, NpyExport.NPY);
+        final NpyExport export;
+        try {
+            export = NpyExport.getDefault();
+        } finally {
+            System.clearProperty(NpyExport.PROPERTY);
+        }
+        Assert.assertNotNull(export);
+        Assert.assertNull(NpyExport.getDefault());
+
+        final Map<String, Object> result = new HashMap<>();
+        export.wrap(dir, outputs -> {
+            outputs.put("x", new double[] { 1., 2. });
+            outputs.put("t", new double[][] { { 0. }, { 1. } });
+            outputs.put("s", 3.);
+        }).accept(result);
+
+        Assert.assertEquals(3., result.get("s"));
+        Assert.assertEquals("arrays/x.npy", result.get("x"));
+        Assert.assertEquals("arrays/t.npy", result.get("t"));
+        Assert.assertEquals(2 * Double.BYTES, NpyExportTest.read(new File(dir, "arrays/x.npy"), "(2,)").remaining());
+        Assert.assertEquals(2 * Double.BYTES, NpyExportTest.read(new File(dir, "arrays/t.npy"), "(1, 2)").remaining());
+    }
+}
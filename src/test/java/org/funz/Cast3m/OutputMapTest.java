@@ -0,0 +1,184 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutputMapTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(OutputMapTest.class.getName());
+    }
+
+    /** The outputs found by setInputFiles are cached in the test directory, not in the user one */
+    @Before
+    public final void setCache() throws IOException {
+        System.setProperty(OutputCache.DIRECTORY_PROPERTY, this.temp.newFolder("cache").getPath());
+    }
+
+    @After
+    public final void clearCache() {
+        System.clearProperty(OutputCache.DIRECTORY_PROPERTY);
+    }
+
+    @Test
+    public final void lazyTest() throws IOException, ClassNotFoundException {
+        final AtomicInteger csvReads = new AtomicInteger();
+        final AtomicInteger listingReads = new AtomicInteger();
+        final OutputMap outputs = new OutputMap(Collections.singletonMap("cast3m.cpu_s", 1.0));
+        outputs.defer(Arrays.asList("a", "b"), result -> {
+            csvReads.incrementAndGet();
+            result.put("a", new double[] { 1, 2 });
+            result.put("b", new double[] { 3 });
+        });
+        outputs.defer(Arrays.asList("x"), result -> {
+            listingReads.incrementAndGet();
+            result.put("x", 4.0);
+        });
+
+        Assert.assertTrue(outputs.containsKey("b"));
+        Assert.assertEquals(0, csvReads.get());
+        Assert.assertEquals(4.0, outputs.get("x"));
+        Assert.assertEquals(0, csvReads.get());
+        Assert.assertEquals(1, listingReads.get());
+        Assert.assertEquals(1.0, outputs.get("cast3m.cpu_s"));
+
+        // the file of a is read once, for a and b
+        Assert.assertArrayEquals(new double[] { 1, 2 }, (double[]) outputs.get("a"), 0);
+        Assert.assertArrayEquals(new double[] { 3 }, (double[]) outputs.get("b"), 0);
+        Assert.assertEquals(1, csvReads.get());
+        Assert.assertFalse(outputs.isPending());
+
+        outputs.defer(Arrays.asList("y"), result -> result.put("y", 5.0));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(outputs);
+        }
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final Object copy = in.readObject();
+            Assert.assertEquals(LinkedHashMap.class, copy.getClass());
+            Assert.assertEquals(5.0, ((Map<?, ?>) copy).get("y"));
+            Assert.assertEquals(5, ((Map<?, ?>) copy).size());
+        }
+    }
+
+    @Test
+    public final void selectionTest() throws IOException {
+        final File dir = this.temp.newFolder("case");
+        final File deck = new File(dir, "case.dgibi");
+        Files.write(deck.toPath(), Arrays.asList("MESS 'x=' x;", "MESS 'y=' y;", "OPTI SORT 'text.txt';",
+                "SORT 'CHAI' chai;", "FIN;"), StandardCharsets.ISO_8859_1);
+        Files.write(new File(dir, "castem.out").toPath(), Arrays.asList(" x= 1.5", " y= 2.5"),
+                StandardCharsets.ISO_8859_1);
+        final Cast3mIOPlugin plugin = new Cast3mIOPlugin();
+        plugin.setInputFiles(deck);
+
+        final Map<String, Object> outputs = plugin.readOutput(dir, Collections.singleton("y"));
+        Assert.assertEquals(2.5, outputs.get("y"));
+        Assert.assertFalse(outputs.containsKey("x"));
+        Assert.assertFalse(outputs.containsKey("chai"));
+
+        final Map<String, Object> all = new HashMap<>(plugin.readOutput(dir));
+        Assert.assertEquals(1.5, all.get("x"));
+        Assert.assertArrayEquals(new double[0], (double[]) all.get("chai"), 0);
+    }
+
+    @Test
+    public final void bulkTest() throws IOException, InterruptedException {
+        final File root = this.temp.newFolder("campaign");
+        final File deck = new File(root, "case.dgibi");
+        Files.write(deck.toPath(), Arrays.asList("MESS 'x=' x;", "FIN;"), StandardCharsets.ISO_8859_1);
+        final List<File> dirs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final File dir = new File(root, "case" + i);
+            dir.mkdir();
+            Files.write(new File(dir, "castem.out").toPath(), Collections.singletonList(" x= " + i),
+                    StandardCharsets.ISO_8859_1);
+            dirs.add(dir);
+        }
+        final Cast3mIOPlugin plugin = new Cast3mIOPlugin();
+        plugin.setInputFiles(deck);
+
+        final Map<File, Object> results = new HashMap<>();
+        plugin.readOutputs(dirs, null, 4, (dir, outputs) -> {
+            try {
+                outputs.put("x", 0.0);
+            } catch (final UnsupportedOperationException e) {
+                // immutable
+                results.put(dir, outputs.get("x"));
+            }
+        }, (dir, e) -> results.put(dir, e));
+        Assert.assertEquals(dirs.size(), results.size());
+        for (int i = 0; i < dirs.size(); i++) {
+            Assert.assertEquals((double) i, results.get(dirs.get(i)));
+        }
+        // the same outputs as a single read
+        final Map<String, Object> single = new LinkedHashMap<>(plugin.readOutput(dirs.get(0)));
+        plugin.readOutputs(dirs.subList(0, 1), null, 1,
+                (dir, outputs) -> Assert.assertEquals(single.keySet(), outputs.keySet()), (dir, e) -> {
+                    throw e;
+                });
+
+        // a directory which cannot be read is given to the failures
+        final File broken = dirs.get(7);
+        final Cast3mIOPlugin failing = new Cast3mIOPlugin() {
+            @Override
+            Map<String, Object> readBaseOutput(final File outdir) {
+                if (outdir.equals(broken)) {
+                    throw new IllegalStateException("broken");
+                }
+                return super.readBaseOutput(outdir);
+            }
+        };
+        failing.setInputFiles(deck);
+        results.clear();
+        failing.readOutputs(dirs, null, 4, results::put, results::put);
+        Assert.assertEquals(dirs.size(), results.size());
+        Assert.assertEquals("broken", ((IllegalStateException) results.get(broken)).getMessage());
+
+        // the exceptions of the consumer reach the caller
+        try {
+            plugin.readOutputs(dirs, null, 4, (dir, outputs) -> {
+                throw new IllegalArgumentException(dir.getName());
+            }, (dir, e) -> {
+                // none
+            });
+            Assert.fail();
+        } catch (final IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().startsWith("case"));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProcessSamplerTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(ProcessSamplerTest.class.getName());
+    }
+
+    @Test
+    public final void sampleTest() throws IOException, InterruptedException {
+        Assume.assumeTrue(ProcessSampler.isSupported());
+        final File dir = this.temp.newFolder();
+        // a script busy for a while, then waiting for a child process
+        final Process process = new ProcessBuilder("sh", "-c",
+                "i=0; while [ $i -lt 100000 ]; do i=$((i+1)); done; sleep 10").start();
+        try {
+            final long pid = ProcessSampler.getPid(process);
+            Files.write(new File(dir, "PID").toPath(), (pid + "\n").getBytes(StandardCharsets.US_ASCII));
+
+            final ProcessSampler sampler = new ProcessSampler(dir);
+            boolean sampled = false;
+            for (int i = 0; (i < 100) && !sampler.format().contains("threads=2"); i++) {
+                sampled |= sampler.sample();
+                Thread.sleep(100);
+            }
+            Assert.assertTrue(sampled);
+            // the shell and its sleep
+            Assert.assertTrue(sampler.format(), sampler.format().endsWith("threads=2"));
+            Assert.assertTrue(sampler.getRssPeakMb() > 0);
+            Assert.assertTrue(sampler.getCpuSeconds() > 0);
+        } finally {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    @Test
+    public final void summaryTest() throws IOException {
+        final File dir = this.temp.newFolder();
+        final ProcessSampler sampler = new ProcessSampler(dir);
+        // no PID file: nothing sampled
+        Assert.assertFalse(sampler.sample());
+        sampler.writeSummary(dir, 12345);
+
+        final Map<String, Object> outputs = new HashMap<>();
+        ProcessSampler.readSummary(dir, outputs);
+        Assert.assertEquals(12.345, (Double) outputs.get(ProcessSampler.WALL_OUTPUT), 0);
+        Assert.assertEquals(0, (Double) outputs.get(ProcessSampler.CPU_OUTPUT), 0);
+        Assert.assertEquals(0, (Double) outputs.get(ProcessSampler.RSS_PEAK_OUTPUT), 0);
+        Assert.assertEquals(0, (Double) outputs.get(ProcessSampler.IO_OUTPUT), 0);
+
+        outputs.clear();
+        ProcessSampler.readSummary(new File(dir, "missing"), outputs);
+        Assert.assertTrue(outputs.isEmpty());
+    }
+}
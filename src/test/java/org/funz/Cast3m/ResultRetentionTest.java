@@ -0,0 +1,95 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResultRetentionTest {
+    final String path = "./src/test/java/org/funz/Cast3m/";
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(ResultRetentionTest.class.getName());
+    }
+
+    private static void write(final File dir, final String name) throws IOException {
+        final File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), Collections.singletonList(name), StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public final void retentionTest() throws IOException {
+        final File dir = this.temp.newFolder();
+        Files.copy(new File(this.path + "outfilevar.dgibi").toPath(), new File(dir, "outfilevar.dgibi").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        ResultRetentionTest.write(dir, "data/mesh.txt");
+
+        final ResultRetention retention = new ResultRetention(ResultRetention.GZIP, Arrays.asList("plots/*.ps"));
+        final Set<String> inputs = retention.prepare(dir);
+        Assert.assertEquals(Arrays.asList(ResultRetention.GZIP, "castem.out", "castem.out.gz",
+                "castem.out.gz.idx", "RESOURCES", "WATCHDOG", "var_res.csv",
+                "var2_res.csv", "text.txt", "plots/*.ps"),
+                Files.readAllLines(new File(dir, ResultRetention.KEEP_FILE).toPath()));
+
+        // the files written by the run
+        for (final String name : Arrays.asList("castem.out", "RESOURCES", "var_res.csv", "text.txt", "plots/u.ps",
+                "fort.99", "trace/log.txt")) {
+            ResultRetentionTest.write(dir, name);
+        }
+
+        Assert.assertEquals(2, retention.apply(dir, inputs));
+        Assert.assertTrue(new File(dir, "data/mesh.txt").isFile());
+        Assert.assertTrue(new File(dir, "var_res.csv").isFile());
+        Assert.assertTrue(new File(dir, "plots/u.ps").isFile());
+        Assert.assertFalse(new File(dir, "fort.99").exists());
+        Assert.assertTrue(new File(dir, "fort.99.gz").isFile());
+        Assert.assertTrue(new File(dir, "trace/log.txt.gz").isFile());
+        Assert.assertFalse(new File(dir, ResultRetention.KEEP_FILE).exists());
+    }
+
+    @Test
+    public final void mixedCaseTest() throws IOException {
+        final File dir = this.temp.newFolder();
+        Files.write(new File(dir, "case.dgibi").toPath(), Arrays.asList("OPTI SORT 'Result.csv';", "SORT 'EXCE' ta;",
+                "OPTI SAUV FORM 'Resu.SAUV';", "SAUV ta;", "@EXCEL1 ev 'Courbe.csv';", "FIN;"),
+                StandardCharsets.ISO_8859_1);
+
+        // the names of the files read by readOutput
+        final ResultRetention retention = new ResultRetention(ResultRetention.DELETE, Collections.<String> emptyList());
+        final Set<String> inputs = retention.prepare(dir);
+        final List<String> kept = Files.readAllLines(new File(dir, ResultRetention.KEEP_FILE).toPath());
+        Assert.assertEquals(Arrays.asList("result.csv", "resu.sauv", "Courbe.csv"), kept.subList(6, kept.size()));
+
+        for (final String name : Arrays.asList("result.csv", "resu.sauv", "Courbe.csv", "fort.99")) {
+            ResultRetentionTest.write(dir, name);
+        }
+        Assert.assertEquals(1, retention.apply(dir, inputs));
+        Assert.assertTrue(new File(dir, "result.csv").isFile());
+        Assert.assertTrue(new File(dir, "resu.sauv").isFile());
+        Assert.assertTrue(new File(dir, "Courbe.csv").isFile());
+    }
+}
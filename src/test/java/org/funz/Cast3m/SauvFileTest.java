@@ -0,0 +1,213 @@
+/**
+  * Project        : Prométhée / Cast3m 2020
+  * Web site       : http://promethee.irsn.org
+  * Copyright      : IRSN, Paris, FRANCE, 2020
+  *                  https://www.irsn.fr
+  *                  All copyright and trademarks reserved.
+  * Email          : https://www.irsn.fr/FR/Contact/Pages/Question.aspx
+  * License        : cf. LICENSE.txt
+  */
+
+package org.funz.Cast3m;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SauvFileTest {
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    public static void main(final String args[]) {
+        org.junit.runner.JUnitCore.main(SauvFileTest.class.getName());
+    }
+
+    /**
+     * SAUV FORM of: ta = TABLE; ta . 'YMAX' = 2.5; ta . 'N' = 4; ta . 'COURBE' = PROG 1. 2. 3. 4.; x = 7.; SAUV ta x;
+     */
+    private File write() throws IOException {
+        final File file = new File(this.temp.newFolder(), "resu.sauv");
+        Files.write(file.toPath(), Arrays.asList(
+                " ENREGISTREMENT DE TYPE   4",
+                " NIVEAU  20 NIVEAU ERREUR   0 DIMENSION   2",
+                " DENSITE  0.00000E+00",
+                " ENREGISTREMENT DE TYPE   7",
+                " NOMBRE INTEGERS      16",
+                "       1       0       0       0       0       0       0       0       0       0",
+                "       0       0       0       0       0       0",
+                " ENREGISTREMENT DE TYPE   2",
+                " PILE NUMERO  10NBRE OBJETS NOMMES       1NBRE OBJETS       1",
+                " TA      ",
+                "       1",
+                "      12",
+                "      27       1      25       1      27       2      26       1      27       3",
+                "      18       2",
+                " ENREGISTREMENT DE TYPE   2",
+                " PILE NUMERO  18NBRE OBJETS NOMMES       0NBRE OBJETS       2",
+                "       2",
+                "  9.00000000000000E+00  8.00000000000000E+00",
+                "       4",
+                "  1.00000000000000E+00  2.00000000000000E+00  3.00000000000000E+00",
+                "  4.00000000000000D+00",
+                " ENREGISTREMENT DE TYPE   2",
+                " PILE NUMERO  25NBRE OBJETS NOMMES       1NBRE OBJETS       2",
+                " X       ",
+                "       2",
+                "       2",
+                "  2.50000000000000E+00  7.00000000000000E+00",
+                " ENREGISTREMENT DE TYPE   2",
+                " PILE NUMERO  26NBRE OBJETS NOMMES       0NBRE OBJETS       1",
+                "       1",
+                "       4",
+                " ENREGISTREMENT DE TYPE   2",
+                " PILE NUMERO  27NBRE OBJETS NOMMES       0NBRE OBJETS       3",
+                "      11       3",
+                "YMAXNCOURBE",
+                "       4       5      11",
+                " ENREGISTREMENT DE TYPE   5",
+                "LABEL AUTOMATIQUE :   1"), StandardCharsets.ISO_8859_1);
+        return file;
+    }
+
+    /**
+     * SAUV FORM of a CHPOINT u, with the components UX and UY on 2 nodes and UX on 1 node, and of an EVOLUTIO ev of
+     * abscissae PROG 0. 1. and ordinates PROG 10. 20.
+     */
+    private File writeFields() throws IOException {
+        final File file = new File(this.temp.newFolder(), "resu.sauv");
+        Files.write(file.toPath(), Arrays.asList(
+                " ENREGISTREMENT DE TYPE   4",
+                " NIVEAU  20 NIVEAU ERREUR   0 DIMENSION   2",
+                " DENSITE  0.00000E+00",
+                " ENREGISTREMENT DE TYPE   2",
+                " PILE NUMERO   2NBRE OBJETS NOMMES       1NBRE OBJETS       1",
+                " U       ",
+                "       1",
+                "       2       3       0       0",
+                "      -1       0       2      -2       0       1",
+                " UX       UY       UX",
+                "       0       0       0",
+                " DIRECTION",
+                " DEPLACEMENTS",
+                "       2       2",
+                "  1.00000000000000E+00  2.00000000000000E+00  3.00000000000000E+00",
+                "  4.00000000000000E+00",
+                "       1       1",
+                "  5.00000000000000E+00",
+                " ENREGISTREMENT DE TYPE   2",
+                " PILE NUMERO  15NBRE OBJETS NOMMES       1NBRE OBJETS       1",
+                " EV      ",
+                "       1",
+                "       3",
+                "       1       1       2",
+                " ENREGISTREMENT DE TYPE   2",
+                " PILE NUMERO  18NBRE OBJETS NOMMES       0NBRE OBJETS       2",
+                "       2",
+                "  0.00000000000000E+00  1.00000000000000E+00",
+                "       2",
+                "  1.00000000000000E+01  2.00000000000000E+01",
+                " ENREGISTREMENT DE TYPE   5",
+                "LABEL AUTOMATIQUE :   1"), StandardCharsets.ISO_8859_1);
+        return file;
+    }
+
+    /** The outputs found by setInputFiles are cached in the test directory, not in the user one */
+    @Before
+    public final void setCache() throws IOException {
+        System.setProperty(OutputCache.DIRECTORY_PROPERTY, this.temp.newFolder("cache").getPath());
+    }
+
+    @After
+    public final void clearCache() {
+        System.clearProperty(OutputCache.DIRECTORY_PROPERTY);
+    }
+
+    @Test
+    public final void readTest() throws IOException {
+        try (final SauvFile sauv = SauvFile.open(this.write())) {
+            Assert.assertEquals(Arrays.asList("TA", "X"), Arrays.asList(sauv.getNames().toArray()));
+            Assert.assertEquals(SauvFile.PILE_TABLE, sauv.getPile("ta"));
+            Assert.assertEquals(7.0, (Double) sauv.read("x"), 0);
+            Assert.assertNull(sauv.read("y"));
+
+            final Map<?, ?> table = (Map<?, ?>) sauv.read("TA");
+            Assert.assertEquals(Arrays.asList("YMAX", "N", "COURBE"), Arrays.asList(table.keySet().toArray()));
+            Assert.assertEquals(2.5, (Double) table.get("YMAX"), 0);
+            Assert.assertEquals(4.0, (Double) table.get("N"), 0);
+            Assert.assertArrayEquals(new double[] { 1, 2, 3, 4 }, (double[]) table.get("COURBE"), 0);
+        }
+    }
+
+    @Test
+    public final void readFieldsTest() throws IOException {
+        try (final SauvFile sauv = SauvFile.open(this.writeFields())) {
+            Assert.assertEquals(SauvFile.PILE_CHPOINT, sauv.getPile("u"));
+            Assert.assertEquals(SauvFile.PILE_EVOLUTIO, sauv.getPile("ev"));
+
+            final Map<?, ?> field = (Map<?, ?>) sauv.read("u");
+            Assert.assertEquals(Arrays.asList("UX", "UY"), Arrays.asList(field.keySet().toArray()));
+            Assert.assertArrayEquals(new double[] { 1, 2, 5 }, (double[]) field.get("UX"), 0);
+            Assert.assertArrayEquals(new double[] { 3, 4 }, (double[]) field.get("UY"), 0);
+
+            final Map<?, ?> evolution = (Map<?, ?>) sauv.read("ev");
+            Assert.assertEquals(Arrays.asList("X", "Y"), Arrays.asList(evolution.keySet().toArray()));
+            Assert.assertArrayEquals(new double[] { 0, 1 }, (double[]) evolution.get("X"), 0);
+            Assert.assertArrayEquals(new double[] { 10, 20 }, (double[]) evolution.get("Y"), 0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public final void binaryTest() throws IOException {
+        final File file = new File(this.temp.newFolder(), "resu.sauv");
+        Files.write(file.toPath(), new byte[] { 0, 0, 0, 4, 1, 2 });
+        SauvFile.open(file).close();
+    }
+
+    @Test
+    public final void readOutputTest() throws IOException {
+        final File file = this.write();
+        final File deck = new File(file.getParentFile(), "case.dgibi");
+        Files.write(deck.toPath(),
+                Arrays.asList("ta = TABLE;", "ta . 'YMAX' = 2.5;", "ta . 'COURBE' = PROG 1. 2. 3. 4.;", "x = 7.;",
+                        "OPTI SAUV FORM 'resu.sauv';", "SAUV FORM ta x;", "FIN;"),
+                StandardCharsets.ISO_8859_1);
+        final Cast3mIOPlugin plugin = new Cast3mIOPlugin();
+        plugin.setInputFiles(deck);
+        final Map<String, Object> outputs = plugin.readOutput(file.getParentFile());
+        Assert.assertEquals(2.5, (Double) outputs.get("ta.YMAX"), 0);
+        Assert.assertArrayEquals(new double[] { 1, 2, 3, 4 }, (double[]) outputs.get("ta.COURBE"), 0);
+        Assert.assertEquals(7.0, (Double) outputs.get("x"), 0);
+    }
+
+    @Test
+    public final void readFieldsOutputTest() throws IOException {
+        final File file = this.writeFields();
+        final File deck = new File(file.getParentFile(), "case.dgibi");
+        Files.write(deck.toPath(),
+                Arrays.asList("OPTI SAUV FORM 'resu.sauv';", "u = RESO ri f;", "ev = EVOL MANU x y;", "SAUV u ev;",
+                        "OPTI SAUV 'bin.sauv';", "SAUV w;", "FIN;"),
+                StandardCharsets.ISO_8859_1);
+        final Cast3mIOPlugin plugin = new Cast3mIOPlugin();
+        plugin.setInputFiles(deck);
+        Assert.assertTrue(plugin._output.containsKey("u") && plugin._output.containsKey("ev"));
+        // not formatted: not an output
+        Assert.assertFalse(plugin._output.containsKey("w"));
+        final Map<String, Object> outputs = plugin.readOutput(file.getParentFile());
+        Assert.assertArrayEquals(new double[] { 3, 4 }, ((double[][]) outputs.get("u"))[1], 0);
+        // the arrays by key come with the object
+        Assert.assertArrayEquals(new double[] { 1, 2, 5 }, (double[]) outputs.get("u.UX"), 0);
+        Assert.assertArrayEquals(new double[] { 10, 20 }, ((double[][]) outputs.get("ev"))[1], 0);
+        Assert.assertArrayEquals(new double[] { 10, 20 }, (double[]) outputs.get("ev.Y"), 0);
+    }
+}
@@ -0,0 +1,20 @@
+#!/bin/bash
+
+# Stand-in for castem20 in console mode: echoes each statement, prints the MESS strings and the 'name=' values,
+# exits on FIN (CRASH makes it die in the middle of a case, ERR prints an error banner and goes on)
+echo " CASTEM banner"
+while IFS= read -r line ; do
+  if [[ "$line" =~ ^[[:space:]]*[Ff][Ii][Nn][[:space:]]*\; ]] ; then
+    exit 0
+  fi
+  echo " \$ $line"
+  if [[ "$line" =~ ^MESS\ \'([^\']*)\'\;$ ]] ; then
+    echo " ${BASH_REMATCH[1]}"
+  elif [[ "$line" =~ ^MESS\ \'([A-Za-z0-9_]+)=\'\ ([A-Za-z0-9_]+)\; ]] ; then
+    echo " ${BASH_REMATCH[1]}=  $$"
+  elif [[ "$line" == "CRASH;" ]] ; then
+    exit 3
+  elif [[ "$line" == "ERR;" ]] ; then
+    echo " ***** ERREUR  21 ***** dans l'operateur ERR"
+  fi
+done